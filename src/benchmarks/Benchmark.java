@@ -0,0 +1,146 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * A small benchmark harness which measures the throughput and allocation rate of an operation.
+ * 
+ * Every iteration asks the setup for a fresh operation and runs it until the iteration time has passed.
+ * The first iterations are used to warm up the JIT and are not reported. Allocations are measured over
+ * all threads, so work done on the fitness executor is included as well.
+ */
+public class Benchmark {
+
+	/**
+	 * Makes sure the JIT can't remove the benchmarked code.
+	 */
+	public static volatile Object blackhole;
+
+	private static final PrintStream NULL_STREAM = new PrintStream(new OutputStream() {
+
+		@Override
+		public void write(int b) {}
+
+		@Override
+		public void write(byte[] b, int off, int len) {}
+	});
+
+	private final int warmupIterations;
+	private final int measurementIterations;
+	private final long iterationMillis;
+
+	public Benchmark(int warmupIterations, int measurementIterations, long iterationMillis) {
+		this.warmupIterations = warmupIterations;
+		this.measurementIterations = measurementIterations;
+		this.iterationMillis = iterationMillis;
+	}
+
+	public static void printHeader() {
+		System.out.println(String.format(Locale.ROOT, "%-32s %-24s %14s %14s %14s %12s %8s", "Benchmark", "Params", "ops/s", "us/op", "alloc B/op", "alloc MB/s", "gc"));
+	}
+
+	public void run(String name, String params, Runnable operation) {
+		this.run(name, params, () -> operation);
+	}
+
+	/**
+	 * The setup is called before every iteration and is not measured.
+	 */
+	public void run(String name, String params, Supplier<Runnable> setup) {
+		PrintStream out = System.out;
+
+		long operations = 0;
+		long nanos = 0;
+		long allocated = 0;
+		long collections = 0;
+
+		try {
+			// the library prints every generation, keep that out of the report
+			System.setOut(NULL_STREAM);
+
+			for (int i = 0; i < this.warmupIterations + this.measurementIterations; i++) {
+				Runnable operation = setup.get();
+
+				long startAllocated = allocatedBytes();
+				long startCollections = collectionCount();
+				long start = System.nanoTime();
+				long end = start + this.iterationMillis * 1000000L;
+
+				long ops = 0;
+				long now;
+				do {
+					operation.run();
+					ops++;
+				} while ((now = System.nanoTime()) < end);
+
+				if (i >= this.warmupIterations) {
+					operations += ops;
+					nanos += now - start;
+					allocated += allocatedBytes() - startAllocated;
+					collections += collectionCount() - startCollections;
+				}
+			}
+		} finally {
+			System.setOut(out);
+		}
+
+		double seconds = nanos / 1e9;
+		boolean measured = allocationSupported();
+		String allocPerOp = !measured ? "n/a" : String.format(Locale.ROOT, "%.1f", allocated / (double) operations);
+		String allocRate = !measured ? "n/a" : String.format(Locale.ROOT, "%.1f", allocated / seconds / (1024 * 1024));
+		System.out.println(String.format(Locale.ROOT, "%-32s %-24s %14.2f %14.3f %14s %12s %8d", name, params, operations / seconds, nanos / 1000.0 / operations, allocPerOp, allocRate, collections));
+	}
+
+	private static boolean allocationSupported() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return false;
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled();
+	}
+
+	/**
+	 * Returns the amount of bytes allocated by all live threads, or 0 if the JVM can't measure this.
+	 */
+	private static long allocatedBytes() {
+		if (!allocationSupported())
+			return 0;
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			if (bytes > 0)
+				total += bytes;
+		}
+		return total;
+	}
+
+	private static long collectionCount() {
+		long total = 0;
+		for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total += Math.max(0, bean.getCollectionCount());
+		}
+		return total;
+	}
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import nl.sandergielisse.mythan.ActivationFunction;
+import nl.sandergielisse.mythan.BackTraceTask;
+import nl.sandergielisse.mythan.CustomizedSigmoidActivation;
+import nl.sandergielisse.mythan.FitnessCalculator;
+import nl.sandergielisse.mythan.LookupSigmoidActivation;
+import nl.sandergielisse.mythan.Mythan;
+import nl.sandergielisse.mythan.Network;
+import nl.sandergielisse.mythan.RationalSigmoidActivation;
+import nl.sandergielisse.mythan.Setting;
+import nl.sandergielisse.mythan.internal.EvolutionCore;
+import nl.sandergielisse.mythan.internal.Population;
+import nl.sandergielisse.mythan.internal.Species;
+import nl.sandergielisse.mythan.internal.genes.Connection;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+import nl.sandergielisse.mythan.internal.genes.Mutation;
+
+/**
+ * Measures the hot paths of the NEAT implementation on synthetic genomes.
+ * 
+ * Usage: NeatBenchmarks [-genes 10,100,1000,10000] [-population 100,1000] [-warmup 3] [-iterations 5] [-time 1000] [filter...]
+ * 
+ * Only benchmarks whose name contains one of the filters are run. Please note that some operations
+ * grow much faster than linear with the genome size, so large sizes may take a very long time.
+ */
+public class NeatBenchmarks {
+
+	private static final FitnessCalculator CALCULATOR = new FitnessCalculator() {
+
+		private final double[][] inputs = { { 0, 0, 0, 1 }, { 0, 1, 1, 1 }, { 1, 0, 1, 1 }, { 1, 1, 0, 1 } };
+
+		@Override
+		public double getFitness(Network network) {
+			double fitness = 1;
+			for (double[] input : this.inputs) {
+				fitness += network.calculate(input)[0];
+			}
+			return fitness;
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+	};
+
+	public static void main(String[] args) {
+		int[] genes = { 10, 100, 1000, 10000 };
+		int[] populations = { 100, 1000 };
+		int warmup = 3;
+		int iterations = 5;
+		long time = 1000;
+		List<String> filters = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "-genes":
+				genes = parse(args[++i]);
+				break;
+			case "-population":
+				populations = parse(args[++i]);
+				break;
+			case "-warmup":
+				warmup = Integer.parseInt(args[++i]);
+				break;
+			case "-iterations":
+				iterations = Integer.parseInt(args[++i]);
+				break;
+			case "-time":
+				time = Long.parseLong(args[++i]);
+				break;
+			default:
+				filters.add(args[i]);
+			}
+		}
+
+		NeatBenchmarks benchmarks = new NeatBenchmarks(new Benchmark(warmup, iterations, time), filters);
+		Benchmark.printHeader();
+
+		benchmarks.activation();
+
+		for (int size : genes) {
+			benchmarks.calculateOutput(size);
+			benchmarks.calculateBatch(size);
+			benchmarks.distance(size);
+			benchmarks.isRecurrent(size);
+		}
+		for (int size : genes) {
+			for (int population : populations) {
+				benchmarks.crossAndAdd(size, population);
+				benchmarks.fixDuplicates(size, population);
+				benchmarks.classify(size, population);
+				benchmarks.classifyQueued(size, population);
+				benchmarks.newGeneration(size, population);
+			}
+		}
+	}
+
+	private static int[] parse(String list) {
+		return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();
+	}
+
+	private final Benchmark benchmark;
+	private final List<String> filters;
+
+	public NeatBenchmarks(Benchmark benchmark, List<String> filters) {
+		this.benchmark = benchmark;
+		this.filters = filters;
+	}
+
+	private boolean enabled(String name) {
+		if (this.filters.isEmpty())
+			return true;
+
+		for (String filter : this.filters) {
+			if (name.contains(filter))
+				return true;
+		}
+		return false;
+	}
+
+	private static EvolutionCore core() {
+		return new EvolutionCore(SyntheticGenomes.INPUTS, SyntheticGenomes.OUTPUTS, new CustomizedSigmoidActivation(), CALCULATOR);
+	}
+
+	/**
+	 * Compares the approximations of the sigmoid to Math.exp, the measured maximum error is given as a parameter.
+	 */
+	public void activation() {
+		if (!this.enabled("activation"))
+			return;
+
+		ActivationFunction exact = new CustomizedSigmoidActivation();
+		ActivationFunction[] functions = { exact, new RationalSigmoidActivation(1e-3), new RationalSigmoidActivation(1e-6), new LookupSigmoidActivation(1e-4), new LookupSigmoidActivation(1e-6) };
+
+		double[] values = new double[4096];
+		for (int i = 0; i < values.length; i++)
+			values[i] = (i - values.length / 2) / 512.0;
+		double[] out = new double[values.length];
+
+		for (ActivationFunction function : functions) {
+			double error = 0;
+			for (int i = -400_000; i <= 400_000; i++) {
+				double x = i / 100_000.0;
+				error = Math.max(error, Math.abs(function.activate(x) - exact.activate(x)));
+			}
+
+			this.benchmark.run(function.getClass().getSimpleName() + ".activate", String.format(Locale.ROOT, "n=%d error=%.1e", values.length, error), () -> {
+				function.activate(values, out, 0, values.length);
+				Benchmark.blackhole = out;
+			});
+		}
+	}
+
+	public void calculateOutput(int genes) {
+		if (!this.enabled("calculateOutput"))
+			return;
+
+		EvolutionCore core = core();
+		SyntheticGenomes synthetic = new SyntheticGenomes(core, genes);
+		Genome genome = synthetic.create(genes);
+		new Species(genome);
+		double[][] inputs = new double[64][];
+		for (int i = 0; i < inputs.length; i++)
+			inputs[i] = synthetic.input();
+
+		int[] counter = new int[1];
+		this.benchmark.run("BackTraceTask.calculateOutput", "genes=" + genes, () -> {
+			double[] input = inputs[counter[0]++ & 63];
+			Benchmark.blackhole = new BackTraceTask(genome, core.getActivationFunction(), input).calculateOutput();
+		});
+
+		genome.getFitness(); // compiles the phenotype
+		this.benchmark.run("Genome.calculate", "genes=" + genes, () -> {
+			double[] input = inputs[counter[0]++ & 63];
+			Benchmark.blackhole = genome.calculate(input);
+		});
+
+		Network compiled = Mythan.compile(genome);
+		this.benchmark.run("CompiledNetwork.calculate", "genes=" + genes, () -> {
+			double[] input = inputs[counter[0]++ & 63];
+			Benchmark.blackhole = compiled.calculate(input);
+		});
+	}
+
+	/**
+	 * Calculates a data set of 4096 samples at once, like a fitness calculator which uses the batch API.
+	 */
+	public void calculateBatch(int genes) {
+		if (!this.enabled("calculateBatch"))
+			return;
+
+		EvolutionCore core = core();
+		SyntheticGenomes synthetic = new SyntheticGenomes(core, genes);
+		Genome genome = synthetic.create(genes);
+		new Species(genome);
+		genome.getFitness(); // compiles the phenotype
+
+		int samples = 4096;
+		double[] inputs = new double[samples * SyntheticGenomes.INPUTS];
+		for (int k = 0; k < samples; k++) {
+			System.arraycopy(synthetic.input(), 0, inputs, k * SyntheticGenomes.INPUTS, SyntheticGenomes.INPUTS);
+		}
+		double[] outputs = new double[samples * SyntheticGenomes.OUTPUTS];
+
+		this.benchmark.run("Genome.calculateBatch", "genes=" + genes + " samples=" + samples, () -> {
+			genome.calculate(inputs, outputs, samples);
+			Benchmark.blackhole = outputs;
+		});
+
+		EvolutionCore singleCore = core();
+		singleCore.setSetting(Setting.SINGLE_PRECISION, 1);
+		Genome single = new SyntheticGenomes(singleCore, genes).create(genes);
+		new Species(single);
+		single.getFitness();
+
+		float[] floatInputs = new float[inputs.length];
+		for (int i = 0; i < inputs.length; i++)
+			floatInputs[i] = (float) inputs[i];
+		float[] floatOutputs = new float[outputs.length];
+
+		this.benchmark.run("Genome.calculateFloatBatch", "genes=" + genes + " samples=" + samples, () -> {
+			single.calculate(floatInputs, floatOutputs, samples);
+			Benchmark.blackhole = floatOutputs;
+		});
+	}
+
+	public void distance(int genes) {
+		if (!this.enabled("distance"))
+			return;
+
+		EvolutionCore core = core();
+		SyntheticGenomes synthetic = new SyntheticGenomes(core, genes);
+		Genome a = synthetic.create(genes);
+		Genome b = synthetic.relative(a);
+		synthetic.grow(b, genes + genes / 10 + 1);
+
+		this.benchmark.run("Genome.distance", "genes=" + genes, () -> {
+			Benchmark.blackhole = Genome.distance(a, b);
+		});
+	}
+
+	public void isRecurrent(int genes) {
+		if (!this.enabled("isRecurrent"))
+			return;
+
+		EvolutionCore core = core();
+		SyntheticGenomes synthetic = new SyntheticGenomes(core, genes);
+		Genome genome = synthetic.create(genes);
+		Mutation mutation = new Mutation(genome);
+		Connection[] connections = new Connection[64];
+		for (int i = 0; i < connections.length; i++) {
+			int[] connection = synthetic.newConnection(genome);
+			connections[i] = new Connection(connection[0], connection[1]);
+		}
+
+		int[] counter = new int[1];
+		this.benchmark.run("Mutation.isRecurrent", "genes=" + genes, () -> {
+			Benchmark.blackhole = mutation.isRecurrent(connections[counter[0]++ & 63]);
+		});
+	}
+
+	public void crossAndAdd(int genes, int population) {
+		if (!this.enabled("crossAndAdd"))
+			return;
+
+		this.benchmark.run("Genome.crossAndAdd", "genes=" + genes + " pop=" + population, () -> {
+			PopulationFixture fixture = new PopulationFixture(genes, population);
+			List<Genome> parents = new ArrayList<>(fixture.getSpecies().getMembers());
+			int[] counter = new int[1];
+			return () -> {
+				Genome father = parents.get(counter[0]++ % parents.size());
+				Genome mother = parents.get(counter[0]++ % parents.size());
+				Genome.crossAndAdd(father, mother);
+				fixture.getPopulation().classifyQueued();
+				fixture.restore();
+			};
+		});
+	}
+
+	public void fixDuplicates(int genes, int population) {
+		if (!this.enabled("fixDuplicates"))
+			return;
+
+		this.benchmark.run("Genome.fixDuplicates", "genes=" + genes + " pop=" + population, () -> {
+			PopulationFixture fixture = new PopulationFixture(genes, population);
+			List<Genome> members = fixture.getMembers();
+			int[] counter = new int[1];
+			return () -> {
+				Genome child = members.get(counter[0]++ % members.size()).clone();
+				child.fixDuplicates();
+				Benchmark.blackhole = child;
+			};
+		});
+	}
+
+	public void classify(int genes, int population) {
+		if (!this.enabled("classify"))
+			return;
+
+		this.benchmark.run("Population.classify", "genes=" + genes + " pop=" + population, () -> {
+			PopulationFixture fixture = new PopulationFixture(genes, population);
+			List<Genome> members = fixture.getMembers();
+			int[] counter = new int[1];
+			return () -> {
+				Genome child = members.get(counter[0]++ % members.size()).clone();
+				child.setSpecies(null);
+				fixture.getPopulation().addGenome(child);
+				fixture.restore();
+			};
+		});
+	}
+
+	public void classifyQueued(int genes, int population) {
+		if (!this.enabled("classifyQueued"))
+			return;
+
+		this.benchmark.run("Population.classifyQueued", "genes=" + genes + " pop=" + population, () -> {
+			PopulationFixture fixture = new PopulationFixture(genes, population);
+			List<Genome> members = fixture.getMembers();
+			return () -> {
+				for (Genome member : members) {
+					Genome child = member.clone();
+					child.setSpecies(null);
+					fixture.getPopulation().queueGenome(child);
+				}
+				fixture.getPopulation().classifyQueued();
+				fixture.restore();
+			};
+		});
+	}
+
+	public void newGeneration(int genes, int population) {
+		if (!this.enabled("newGeneration"))
+			return;
+
+		this.benchmark.run("PopulationManager.newGeneration", "genes=" + genes + " pop=" + population, () -> {
+			PopulationFixture fixture = new PopulationFixture(genes, population);
+			return () -> fixture.getCore().getPopulationManager().newGeneration();
+		});
+	}
+
+	/**
+	 * A population of related synthetic genomes, which can be restored after an operation added genomes to it.
+	 */
+	private static class PopulationFixture {
+
+		private final EvolutionCore core;
+		private final List<Species> species;
+		private final List<Genome> members = new ArrayList<>();
+		private final Map<Species, List<Genome>> snapshot = new HashMap<>();
+
+		public PopulationFixture(int genes, int population) {
+			this.core = core();
+
+			// the base genome is created first, so it starts at the first innovation number like evolved genomes do
+			SyntheticGenomes synthetic = new SyntheticGenomes(this.core, genes ^ population);
+			Genome base = synthetic.create(genes);
+
+			this.core.getPopulationManager().initialize(population);
+			Population pop = this.core.getPopulationManager().getPopulation();
+			pop.getSpecies().clear();
+
+			for (int i = 0; i < population; i++) {
+				Genome genome = synthetic.relative(base);
+				genome.setSpecies(null);
+				if (i % 10 == 0)
+					synthetic.grow(genome, genome.getGenes().size() + 2);
+				pop.addGenome(genome);
+				this.members.add(genome);
+			}
+
+			this.core.getPopulationManager().evaluate();
+
+			this.species = new ArrayList<>(pop.getSpecies());
+			for (Species sp : this.species) {
+				this.snapshot.put(sp, sp.getMembers().snapshot());
+			}
+		}
+
+		public EvolutionCore getCore() {
+			return core;
+		}
+
+		public Population getPopulation() {
+			return this.core.getPopulationManager().getPopulation();
+		}
+
+		public List<Genome> getMembers() {
+			return members;
+		}
+
+		/**
+		 * Returns the biggest species.
+		 */
+		public Species getSpecies() {
+			Species biggest = null;
+			for (Species sp : this.species) {
+				if (biggest == null || sp.getMembers().size() > biggest.getMembers().size())
+					biggest = sp;
+			}
+			return biggest;
+		}
+
+		public void restore() {
+			boolean changed = false;
+			List<Species> current = this.getPopulation().getSpecies();
+			if (current.size() != this.species.size()) {
+				current.clear();
+				current.addAll(this.species);
+				changed = true;
+			}
+			for (Species sp : this.species) {
+				List<Genome> members = this.snapshot.get(sp);
+				if (sp.getMembers().size() != members.size()) {
+					sp.getMembers().clear();
+					sp.getMembers().addAll(members);
+					changed = true;
+				}
+			}
+			if (changed) {
+				this.getPopulation().rebuildStructureIndex();
+			}
+		}
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import nl.sandergielisse.mythan.internal.EvolutionCore;
+import nl.sandergielisse.mythan.internal.genes.Gene;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+
+/**
+ * Builds genomes of a given size the way evolution would grow them, by splitting existing
+ * connections into new nodes and adding new feed forward connections between existing nodes.
+ */
+public class SyntheticGenomes {
+
+	public static final int INPUTS = 4;
+	public static final int OUTPUTS = 2;
+
+	private final EvolutionCore core;
+	private final Random random;
+
+	public SyntheticGenomes(EvolutionCore core, long seed) {
+		this.core = core;
+		this.random = new Random(seed);
+	}
+
+	public static Integer[] inputs() {
+		Integer[] inputs = new Integer[INPUTS];
+		for (int i = 0; i < inputs.length; i++)
+			inputs[i] = i + 1;
+		return inputs;
+	}
+
+	public static Integer[] outputs() {
+		Integer[] outputs = new Integer[OUTPUTS];
+		for (int i = 0; i < outputs.length; i++)
+			outputs[i] = INPUTS + i + 1;
+		return outputs;
+	}
+
+	/**
+	 * Returns a genome with at least the given amount of genes.
+	 */
+	public Genome create(int genes) {
+		Genome genome = new Genome(this.core, null, inputs(), outputs());
+		for (int in = 1; in <= INPUTS; in++) {
+			for (int out = 1; out <= OUTPUTS; out++) {
+				genome.addGene(new Gene(this.core.getNextInnovationNumber(), in, INPUTS + out, this.weight(), true), null, null);
+			}
+		}
+		this.grow(genome, genes);
+		return genome;
+	}
+
+	/**
+	 * Adds nodes and connections to the given genome until it has at least the given amount of genes.
+	 */
+	public void grow(Genome genome, int genes) {
+		/**
+		 * Every node gets a rank, connections only go from a lower to a higher rank so the genome stays feed forward.
+		 */
+		Map<Integer, Double> ranks = new HashMap<>();
+		Set<Long> connections = new HashSet<>();
+		List<Integer> sources = new ArrayList<>();
+		List<Integer> targets = new ArrayList<>();
+
+		for (int in : genome.getInputNodes()) {
+			ranks.put(in, 0D);
+			sources.add(in);
+		}
+		for (int out : genome.getOutputNodes()) {
+			ranks.put(out, 1D);
+			targets.add(out);
+		}
+		for (Gene gene : genome.getGenes()) {
+			connections.add(key(gene.getFrom(), gene.getTo()));
+		}
+
+		for (int node : genome.getHiddenNodes()) {
+			// hidden nodes of an existing genome are ranked in order of creation
+			ranks.put(node, 0.5);
+			sources.add(node);
+			targets.add(node);
+		}
+
+		int nextNode = genome.getHighestNode() + 1;
+		while (genome.getGenes().size() < genes) {
+			if (this.random.nextDouble() < 0.3) {
+				List<Gene> enabled = new ArrayList<>();
+				for (Gene gene : genome.getGenes()) {
+					if (gene.isEnabled())
+						enabled.add(gene);
+				}
+				Gene split = enabled.get(this.random.nextInt(enabled.size()));
+				split.setEnabled(false);
+
+				int node = nextNode++;
+				ranks.put(node, (ranks.get(split.getFrom()) + ranks.get(split.getTo())) / 2);
+				sources.add(node);
+				targets.add(node);
+
+				genome.addGene(new Gene(this.core.getNextInnovationNumber(), split.getFrom(), node, 1D, true), null, null);
+				genome.addGene(new Gene(this.core.getNextInnovationNumber(), node, split.getTo(), split.getWeight(), true), null, null);
+				connections.add(key(split.getFrom(), node));
+				connections.add(key(node, split.getTo()));
+			} else {
+				int from = sources.get(this.random.nextInt(sources.size()));
+				int to = targets.get(this.random.nextInt(targets.size()));
+
+				if (ranks.get(from) >= ranks.get(to) || !connections.add(key(from, to)))
+					continue;
+
+				genome.addGene(new Gene(this.core.getNextInnovationNumber(), from, to, this.weight(), true), null, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns a copy of the given genome with disturbed weights, to be used as a member of the same species.
+	 */
+	public Genome relative(Genome genome) {
+		Genome copy = genome.clone();
+		for (Gene gene : copy.getGenes()) {
+			gene.setWeight(gene.getWeight() + (this.random.nextDouble() - 0.5) * 0.2);
+		}
+		return copy;
+	}
+
+	/**
+	 * Returns a connection which does not exist in the given genome yet, but could be created by a mutation.
+	 */
+	public int[] newConnection(Genome genome) {
+		List<Integer> froms = genome.getNodes(true, true, false);
+		List<Integer> tos = genome.getNodes(false, true, true);
+		Set<Long> connections = new HashSet<>();
+		for (Gene gene : genome.getGenes()) {
+			connections.add(key(gene.getFrom(), gene.getTo()));
+		}
+
+		for (int attempt = 0; attempt < 1000; attempt++) {
+			int from = froms.get(this.random.nextInt(froms.size()));
+			int to = tos.get(this.random.nextInt(tos.size()));
+			if (from != to && !connections.contains(key(from, to)))
+				return new int[] { from, to };
+		}
+		throw new IllegalStateException("Genome is fully connected");
+	}
+
+	public double[] input() {
+		double[] input = new double[INPUTS];
+		for (int i = 0; i < input.length; i++)
+			input[i] = this.random.nextDouble();
+		return input;
+	}
+
+	private double weight() {
+		return this.random.nextDouble() * 4 - 2;
+	}
+
+	private static long key(int from, int to) {
+		return ((long) from << 32) | (to & 0xFFFFFFFFL);
+	}
+}
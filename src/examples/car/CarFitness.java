@@ -0,0 +1,107 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package examples.car;
+
+import java.awt.image.BufferedImage;
+
+import nl.sandergielisse.mythan.FitnessCalculator;
+import nl.sandergielisse.mythan.Network;
+
+/**
+ * Lets the network drive a car over the route, the faster it reaches the finish the higher the fitness.
+ * 
+ * The inputs are the X antenna's. When the antenna hits something,
+ * the input is 0, or 1 for an antenna not hitting something.
+ * 
+ * The network is recurrent, so it remembers its previous outputs like
+ * the current speed itself. It is reset at the start of every drive.
+ * 
+ * There are 3 output types.
+ * 
+ * 0.0 - 0.3 = steer left
+ * 0.3 - 0.7 = don't steer
+ * 0.7 - 1.0 = steer right
+ */
+public class CarFitness extends FitnessCalculator {
+
+	/**
+	 * A car which didn't reach the finish in 45 seconds (30 ticks per second) is stopped, it would otherwise drive in circles forever.
+	 */
+	private static final int MAX_TICKS = 45 * 30;
+
+	private final BufferedImage background;
+
+	public CarFitness(BufferedImage background) {
+		this.background = background;
+	}
+
+	@Override
+	public double getFitness(Network network) {
+
+		CarLocation carLocation = new CarLocation();
+		network.reset();
+
+		long ticksLived = 0;
+
+		while (carLocation.isAlive(background) && !carLocation.isOnFinish(background) && ticksLived < MAX_TICKS) {
+			drive(network, carLocation, background);
+			ticksLived++;
+		}
+
+		/**
+		 * First 50 fitness is for actually making it (0-100%), rest is for speed.
+		 */
+		double fitness = 0;
+		double secondsLived = ticksLived / 30D; // 30 ticks per second
+
+		if (carLocation.isOnFinish(background)) {
+			// we finished
+			fitness = (45 - secondsLived);
+		}
+
+		return fitness * fitness;
+	}
+
+	/**
+	 * Moves the car one tick, steered by the network.
+	 */
+	public static void drive(Network network, CarLocation carLocation, BufferedImage background) {
+		boolean rightClicked = false;
+		boolean leftClicked = false;
+
+		double[] inputs = new double[carLocation.getAntennas().size()];
+
+		for (int i = 0; i < carLocation.getAntennas().size(); i++) {
+			Antenna ant = carLocation.getAntennas().get(i);
+			double len = ant.getFreeDistance(background);
+			if (len > 200)
+				len = 200;
+			inputs[i] = len / 200D;
+		}
+
+		double[] ans = network.calculate(inputs);
+		double output = ans[0];
+		double speed = ans[1];
+
+		if (output >= 0 && output <= 0.3)
+			leftClicked = true;
+
+		if (output >= 0.7 && output <= 1)
+			rightClicked = true;
+
+		carLocation.tick(rightClicked, leftClicked, speed);
+	}
+}
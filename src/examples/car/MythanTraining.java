@@ -19,8 +19,8 @@ import java.awt.image.BufferedImage;
 
 import javax.swing.JFrame;
 
+import nl.sandergielisse.mythan.ConsoleListener;
 import nl.sandergielisse.mythan.CustomizedSigmoidActivation;
-import nl.sandergielisse.mythan.FitnessCalculator;
 import nl.sandergielisse.mythan.Mythan;
 import nl.sandergielisse.mythan.Network;
 import nl.sandergielisse.mythan.Setting;
@@ -51,71 +51,7 @@ public class MythanTraining {
 	}
 
 	public void start() {
-		/**
-		 * The inputs are the X antenna's. When the antenna hits something,
-		 * the input is 0, or 1 for an antenna not hitting something.
-		 * 
-		 * There are 3 output types.
-		 * 
-		 * 0.0 - 0.3 = steer left
-		 * 0.3 - 0.7 = don't steer
-		 * 0.7 - 1.0 = steer right
-		 */
-
-		Mythan mythan = Mythan.newInstance(new CarLocation().getAntennas().size() + 1, 2, new CustomizedSigmoidActivation(), new FitnessCalculator() {
-
-			@Override
-			public double getFitness(Network network) {
-
-				CarLocation carLocation = new CarLocation();
-
-				long ticksLived = 0;
-
-				while (carLocation.isAlive(background) && !carLocation.isOnFinish(background)) {
-					boolean rightClicked = false;
-					boolean leftClicked = false;
-
-					double[] inputs = new double[carLocation.getAntennas().size() + 1];
-
-					for (int i = 0; i < carLocation.getAntennas().size(); i++) {
-						Antenna ant = carLocation.getAntennas().get(i);
-						double len = ant.getFreeDistance(background);
-						if (len > 200)
-							len = 200;
-						inputs[i] = len / 200D;
-					}
-					inputs[inputs.length - 1] = carLocation.getCurrentSpeed();
-
-					double[] ans = network.calculate(inputs);
-					double output = ans[0];
-					double speed = ans[1];
-
-					if (output >= 0 && output <= 0.3)
-						leftClicked = true;
-
-					if (output >= 0.7 && output <= 1)
-						rightClicked = true;
-
-					carLocation.tick(rightClicked, leftClicked, speed);
-					ticksLived++;
-				}
-
-				/**
-				 * First 50 fitness is for actually making it (0-100%), rest is for speed.
-				 */
-				double fitness = 0;
-				double secondsLived = ticksLived / 30D; // 30 ticks per second
-
-				if (secondsLived > 45)
-					throw new RuntimeException();
-
-				if (carLocation.isOnFinish(background)) {
-					// we finished
-					fitness = (45 - secondsLived);
-				}
-
-				return fitness * fitness;
-			}
+		Mythan mythan = Mythan.newInstance(new CarLocation().getAntennas().size(), 2, new CustomizedSigmoidActivation(), new CarFitness(background) {
 
 			private int generation = 1;
 
@@ -133,38 +69,17 @@ public class MythanTraining {
 				setTitle("Mythan Driving Car Example (AI Powered) - Generation " + this.generation + " - Fitness " + bestPerforming.getFitness());
 
 				board.setLocation(new CarLocation());
+				bestPerforming.reset();
 				while (true) {
 					try {
 						Thread.sleep((long) (1000D / 30D)); // 30 FPS
 
-						boolean rightClicked = false;
-						boolean leftClicked = false;
-
-						double[] inputs = new double[board.getCarLocation().getAntennas().size() + 1];
-						for (int i = 0; i < board.getCarLocation().getAntennas().size(); i++) {
-							Antenna ant = board.getCarLocation().getAntennas().get(i);
-							double len = ant.getFreeDistance(background);
-							if (len > 200)
-								len = 200;
-							inputs[i] = len / 200D;
-						}
-						inputs[inputs.length - 1] = board.getCarLocation().getCurrentSpeed();
-
-						double[] ans = bestPerforming.calculate(inputs);
-						double output = ans[0];
-						double speed = ans[1];
-
-						if (output >= 0 && output <= 0.3)
-							leftClicked = true;
-
-						if (output >= 0.7 && output <= 1)
-							rightClicked = true;
-
-						board.getCarLocation().tick(rightClicked, leftClicked, speed);
+						CarFitness.drive(bestPerforming, board.getCarLocation(), background);
 
 						if (!board.getCarLocation().isAlive(board.getBackgroundImage())) {
 							// restart
 							board.setLocation(new CarLocation());
+							bestPerforming.reset();
 							continue;
 						}
 
@@ -180,6 +95,18 @@ public class MythanTraining {
 			}
 		});
 
+		mythan.addListener(new ConsoleListener());
+		configure(mythan);
+
+		mythan.trainToFitness(1000, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Applies the settings of the example, the tests evolve the car with the same settings.
+	 */
+	public static void configure(Mythan mythan) {
+		mythan.setSetting(Setting.RECURRENT, 1);
+
 		mythan.setSetting(Setting.GENE_DISABLE_CHANCE, 0.75);
 		mythan.setSetting(Setting.MUTATION_WEIGHT_CHANCE, 0.7);
 		mythan.setSetting(Setting.MUTATION_WEIGHT_RANDOM_CHANCE, 0.10);
@@ -197,7 +124,5 @@ public class MythanTraining {
 
 		mythan.setSetting(Setting.GENERATION_ELIMINATION_PERCENTAGE, 0.85);
 		mythan.setSetting(Setting.BREED_CROSS_CHANCE, 0.75);
-
-		mythan.trainToFitness(1000, Double.MAX_VALUE);
 	}
 }
@@ -15,6 +15,7 @@
  */
 package examples.xor;
 
+import nl.sandergielisse.mythan.ConsoleListener;
 import nl.sandergielisse.mythan.CustomizedSigmoidActivation;
 import nl.sandergielisse.mythan.FitnessCalculator;
 import nl.sandergielisse.mythan.Mythan;
@@ -44,23 +45,43 @@ public class XOR implements Runnable {
 		outputs[3] = new double[] { 1 };
 	}
 
+	/**
+	 * Train to fitness of 15.5, best is 16 (4 * 4)
+	 * sqrt(15.5) = 3.94 so 4 - 3.94 = 0.06 total off
+	 * 0.06 off from total of 4 gives 1.5% error
+	 */
+	public static final double TARGET_FITNESS = 15.5;
+
 	@Override
 	public void run() {
+		Mythan instance = Mythan.newInstance(this.getInputSize(), this.getOutputSize(), new CustomizedSigmoidActivation(), this.getFitnessCalculator());
+		instance.addListener(new ConsoleListener());
+		configure(instance);
 
-		int inputSize = this.inputs[0].length;
-		int outputSize = this.outputs[0].length;
+		instance.trainToFitness(1000, TARGET_FITNESS);
+	}
 
-		Mythan instance = Mythan.newInstance(inputSize, outputSize, new CustomizedSigmoidActivation(), new FitnessCalculator() {
+	public int getInputSize() {
+		return this.inputs[0].length;
+	}
+
+	public int getOutputSize() {
+		return this.outputs[0].length;
+	}
+
+	public FitnessCalculator getFitnessCalculator() {
+		return new FitnessCalculator() {
 
 			@Override
 			public double getFitness(Network network) {
 
+				double[][] actual = new double[4][1];
+				network.calculate(inputs, actual);
+
 				double off = 0;
 				for (int i = 0; i < 4; i++) {
-					double[] in = inputs[i];
-
 					double expectedOut = outputs[i][0];
-					double actualOut = network.calculate(in)[0];
+					double actualOut = actual[i][0];
 
 					off += Math.abs(actualOut - expectedOut);
 				}
@@ -72,8 +93,19 @@ public class XOR implements Runnable {
 
 				return fitness * fitness;
 			}
-		});
 
+			@Override
+			public boolean isThreadSafe() {
+				// the calculator keeps no state, so the networks can be evaluated in parallel
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Applies the settings of the example, the tests evolve XOR with the same settings.
+	 */
+	public static void configure(Mythan instance) {
 		instance.setSetting(Setting.GENE_DISABLE_CHANCE, 0.75);
 		instance.setSetting(Setting.MUTATION_WEIGHT_CHANCE, 0.7);
 		instance.setSetting(Setting.MUTATION_WEIGHT_RANDOM_CHANCE, 0.10);
@@ -91,12 +123,5 @@ public class XOR implements Runnable {
 
 		instance.setSetting(Setting.GENERATION_ELIMINATION_PERCENTAGE, 0.85);
 		instance.setSetting(Setting.BREED_CROSS_CHANCE, 0.75);
-
-		/**
-		 * Train to fitness of 15.5, best is 16 (4 * 4)
-		 * sqrt(15.5) = 3.94 so 4 - 3.94 = 0.06 total off
-		 * 0.06 off from total of 4 gives 1.5% error
-		 */
-		instance.trainToFitness(1000, 15.5);
 	}
 }
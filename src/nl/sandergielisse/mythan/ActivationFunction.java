@@ -18,4 +18,15 @@ package nl.sandergielisse.mythan;
 public interface ActivationFunction {
 
 	public double activate(double x);
+
+	/**
+	 * Stores the activation of in[i] in out[i] for every i from (inclusive) up to to (exclusive).
+	 * The arrays may be the same array. Used to calculate a batch of samples at once, implementations
+	 * should override it with a loop which doesn't go through the interface for every value.
+	 */
+	public default void activate(double[] in, double[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = this.activate(in[i]);
+		}
+	}
 }
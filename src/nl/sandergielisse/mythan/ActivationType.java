@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+/**
+ * The activation functions a hidden node can evolve to use, see Setting.MUTATION_ACTIVATION_CHANCE.
+ * New nodes use the activation function of the instance, which is not one of these types.
+ * 
+ * Every type calculates a batch with its own loop, and the static methods are called directly by compiled networks.
+ */
+public enum ActivationType implements ActivationFunction {
+
+	TANH {
+		@Override
+		public double activate(double x) {
+			return tanh(x);
+		}
+
+		@Override
+		public void activate(double[] in, double[] out, int from, int to) {
+			for (int i = from; i < to; i++)
+				out[i] = tanh(in[i]);
+		}
+	},
+
+	RELU {
+		@Override
+		public double activate(double x) {
+			return relu(x);
+		}
+
+		@Override
+		public void activate(double[] in, double[] out, int from, int to) {
+			for (int i = from; i < to; i++)
+				out[i] = relu(in[i]);
+		}
+	},
+
+	GAUSSIAN {
+		@Override
+		public double activate(double x) {
+			return gaussian(x);
+		}
+
+		@Override
+		public void activate(double[] in, double[] out, int from, int to) {
+			for (int i = from; i < to; i++)
+				out[i] = gaussian(in[i]);
+		}
+	},
+
+	STEP {
+		@Override
+		public double activate(double x) {
+			return step(x);
+		}
+
+		@Override
+		public void activate(double[] in, double[] out, int from, int to) {
+			for (int i = from; i < to; i++)
+				out[i] = step(in[i]);
+		}
+	};
+
+	public static double tanh(double x) {
+		return Math.tanh(x);
+	}
+
+	public static double relu(double x) {
+		return Math.max(0, x);
+	}
+
+	public static double gaussian(double x) {
+		return Math.exp(-x * x);
+	}
+
+	public static double step(double x) {
+		return x > 0 ? 1 : 0;
+	}
+}
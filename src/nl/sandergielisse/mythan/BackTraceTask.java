@@ -22,8 +22,10 @@ import nl.sandergielisse.mythan.internal.genes.Gene;
 import nl.sandergielisse.mythan.internal.genes.Genome;
 
 /**
- * Please note that this is slower than feed forward. But, this
- * is the only option because we don't know the genome's phenotype.
+ * Please note that this is slower than feed forward. Genomes calculate their output
+ * using a compiled {@link nl.sandergielisse.mythan.internal.genes.Phenotype}, this
+ * class is kept as the reference implementation to verify the phenotype against.
+ * It can't calculate recurrent networks, which keep their values between calls.
  */
 public class BackTraceTask {
 
@@ -33,6 +35,9 @@ public class BackTraceTask {
 	private Map<Integer, Double> nodeInputValues = new HashMap<>();
 
 	public BackTraceTask(Genome genome, ActivationFunction function, double[] input) {
+		if (genome.getCore().isRecurrent())
+			throw new UnsupportedOperationException("Recurrent networks can only be calculated by their phenotype");
+
 		this.genome = genome;
 		this.function = function;
 
@@ -83,9 +88,10 @@ public class BackTraceTask {
 		}
 
 		/**
-		 * Apply our activation function.
+		 * Apply the activation function of the node.
 		 */
-		double d = this.function.activate(sum);
+		ActivationType type = this.genome.getActivation(node);
+		double d = type == null ? this.function.activate(sum) : type.activate(sum);
 		cache.put(node, d);
 		return d;
 	}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Set;
+
+import nl.sandergielisse.mythan.MetricsSnapshot.Counter;
+import nl.sandergielisse.mythan.internal.genes.Gene;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+
+/**
+ * Prints the progress of the training to the console.
+ */
+public class ConsoleListener implements EvolutionListener {
+
+	@Override
+	public void generationStarted(int generation, int species, int members) {
+		System.out.println("Building generation " + generation + "... Now " + species + " species active (with a total size of " + members + ").");
+	}
+
+	@Override
+	public void generationFinished(GenerationEvent event) {
+		System.out.println("Best performing genome [" + event.getBestId() + "] had fitness of " + event.getBestFitness() + " and was part of species " + event.getBestSpecies() + " which has " + event.getBestSpeciesSize() + " members");
+		System.out.println(event.getBest().toString());
+
+		long hits = event.getMetrics().getCount(Counter.FITNESS_CACHE_HITS);
+		long misses = event.getMetrics().getCount(Counter.FITNESS_CACHE_MISSES);
+		if (hits + misses > 0) {
+			System.out.println("The fitness cache had " + hits + " hits and " + misses + " misses so far.");
+		}
+	}
+
+	@Override
+	public void speciesExtinct(int generation, int species, ExtinctionReason reason) {
+		if (reason == ExtinctionReason.STAGNATED) {
+			System.out.println("Species was removed, because it failed for 15 generations.");
+		}
+	}
+
+	@Override
+	public void solutionFound(int generation, Network solution, double fitness) {
+		System.out.println("======================================= Mythan =======================================");
+		System.out.println("Solution was found with a fitness of " + fitness + " in generation " + generation);
+
+		if (solution instanceof Genome) {
+			Genome best = (Genome) solution;
+			Set<Integer> hiddenNodes = new HashSet<>();
+			int enabledConns = 0;
+
+			for (Gene g : best.getGenes()) {
+				if (g.isEnabled()) {
+					enabledConns++;
+				}
+
+				{
+					int node = g.getFrom();
+					if (!best.isInputNode(node) && !best.isOutputNode(node)) {
+						hiddenNodes.add(node);
+					}
+				}
+				{
+					int node = g.getTo();
+					if (!best.isInputNode(node) && !best.isOutputNode(node)) {
+						hiddenNodes.add(node);
+					}
+				}
+			}
+
+			System.out.println("The system had " + hiddenNodes.size() + " hidden units and " + enabledConns + " enabled connections");
+			for (Gene gene : best.getGenes()) {
+				System.out.println("	~ " + gene.toString());
+			}
+		}
+		System.out.println("======================================================================================");
+	}
+
+	@Override
+	public void workerUnreachable(InetSocketAddress worker, String reason) {
+		System.out.println("Could not connect to worker " + worker + ": " + reason);
+	}
+
+	@Override
+	public void workerLost(InetSocketAddress worker, int batches, String reason) {
+		System.out.println("Lost connection to worker " + worker + ", " + batches + " batches will be retried: " + reason);
+	}
+
+	@Override
+	public void remoteFallback(int genomes) {
+		System.out.println("No worker could be reached, calculating the fitness of " + genomes + " genomes locally.");
+	}
+}
@@ -22,4 +22,11 @@ public class CustomizedSigmoidActivation implements ActivationFunction {
 		return 1D / (1D + Math.exp(-4.9 * x));
 		//return 2.0 / (1.0 + Math.exp(-4.9 * x)) - 1.0;
 	}
+
+	@Override
+	public void activate(double[] in, double[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = 1D / (1D + Math.exp(-4.9 * in[i]));
+		}
+	}
 }
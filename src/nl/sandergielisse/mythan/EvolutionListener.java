@@ -0,0 +1,84 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Receives the events of a training run, see Mythan.addListener().
+ * 
+ * Events are delivered in order on a separate thread, so a slow listener doesn't slow down the training.
+ * When a listener can't keep up, new events are dropped (and counted by the DROPPED_EVENTS counter of the metrics).
+ * The given networks are genomes of the population, they don't change anymore.
+ */
+public interface EvolutionListener {
+
+	public enum ExtinctionReason {
+		/**
+		 * The highest fitness of the species didn't improve for 15 generations.
+		 */
+		STAGNATED,
+
+		/**
+		 * The average fitness of the species was too low to get any children in the new generation.
+		 */
+		NO_OFFSPRING,
+
+		/**
+		 * None of the children of the species were compatible with it anymore.
+		 */
+		EMPTY,;
+	}
+
+	/**
+	 * Called once the worst genomes of the previous generation have been eliminated, before the new generation is bred.
+	 */
+	public default void generationStarted(int generation, int species, int members) {}
+
+	/**
+	 * Called once the new generation has been bred and evaluated.
+	 */
+	public default void generationFinished(GenerationEvent event) {}
+
+	public default void speciesCreated(int generation, int species) {}
+
+	public default void speciesExtinct(int generation, int species, ExtinctionReason reason) {}
+
+	/**
+	 * Called when a genome has a higher fitness than all genomes before it.
+	 */
+	public default void championChanged(int generation, Network champion, double fitness) {}
+
+	/**
+	 * Called once a genome reached the target fitness.
+	 */
+	public default void solutionFound(int generation, Network solution, double fitness) {}
+
+	/**
+	 * Called when a fitness worker can't be reached, only once until the worker could be reached again.
+	 */
+	public default void workerUnreachable(InetSocketAddress worker, String reason) {}
+
+	/**
+	 * Called when the connection to a fitness worker was lost, the given amount of unanswered batches will be retried.
+	 */
+	public default void workerLost(InetSocketAddress worker, int batches, String reason) {}
+
+	/**
+	 * Called when no fitness worker could be reached, so the fitness of the given amount of genomes is calculated locally.
+	 */
+	public default void remoteFallback(int genomes) {}
+}
@@ -15,9 +15,24 @@
  */
 package nl.sandergielisse.mythan;
 
+/**
+ * Calculates the fitness of the networks.
+ * 
+ * By default the networks are evaluated one by one on the training thread. A calculator
+ * which keeps no state between calls can override isThreadSafe() to return true, the
+ * fitness of a generation is then calculated on multiple threads at once, so
+ * getFitness(Network) may be called concurrently for different networks.
+ */
 public abstract class FitnessCalculator {
 
 	public abstract double getFitness(Network network);
 
+	/**
+	 * Returns true if getFitness(Network) may be called by multiple threads at once.
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
+
 	public void generationFinished(Network bestPerforming) {}
 }
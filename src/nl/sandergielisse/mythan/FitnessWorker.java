@@ -0,0 +1,264 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import nl.sandergielisse.mythan.internal.Tasks;
+import nl.sandergielisse.mythan.internal.genes.Phenotype;
+import nl.sandergielisse.mythan.internal.remote.Protocol;
+
+/**
+ * Calculates the fitness of networks sent by a training process on another machine, see Mythan.setRemoteWorkers().
+ * 
+ * The worker should use the same activation function and fitness calculator as the training process.
+ * A batch of networks is calculated on multiple threads if the fitness calculator is thread safe.
+ */
+public class FitnessWorker implements Runnable, Closeable {
+
+	/**
+	 * Receives the connection problems of a worker, see setListener(). The worker keeps running after every problem.
+	 * The methods are called on the thread of the connection, so they should return quickly.
+	 */
+	public interface Listener {
+
+		/**
+		 * A coordinator tried to connect, but its connection could not be accepted.
+		 */
+		public default void acceptFailed(IOException e) {}
+
+		/**
+		 * The connection to a coordinator was lost before the coordinator closed it.
+		 */
+		public default void connectionLost(IOException e) {}
+	}
+
+	private final ServerSocket serverSocket;
+	private final ActivationFunction activationFunction;
+	private final FitnessCalculator fitnessCalculator;
+	private final ExecutorService connections = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "Mythan fitness worker");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private volatile Listener listener = new Listener() {};
+
+	/**
+	 * Starts listening on the given port, port 0 picks a free port.
+	 */
+	public FitnessWorker(int port, ActivationFunction activationFunction, FitnessCalculator fitnessCalculator) throws IOException {
+		this.serverSocket = new ServerSocket(port);
+		this.activationFunction = activationFunction;
+		this.fitnessCalculator = fitnessCalculator;
+	}
+
+	public int getPort() {
+		return this.serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Sets the listener which receives the connection problems, by default they are ignored.
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Accepts coordinators until the worker is closed.
+	 */
+	@Override
+	public void run() {
+		while (!this.serverSocket.isClosed()) {
+			try {
+				Socket socket = this.serverSocket.accept();
+				this.connections.execute(() -> this.serve(socket));
+			} catch (SocketException e) {
+				// the worker was closed
+			} catch (IOException e) {
+				this.listener.acceptFailed(e);
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (Socket s = socket) {
+			s.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16));
+
+			if (in.readInt() != Protocol.MAGIC || in.readInt() != Protocol.VERSION)
+				throw new IOException("Coordinator uses a different protocol");
+
+			out.writeInt(Protocol.MAGIC);
+			out.writeInt(Protocol.VERSION);
+			out.flush();
+
+			while (true) {
+				byte type = in.readByte();
+				if (type == Protocol.CLOSE)
+					return;
+				if (type != Protocol.BATCH)
+					throw new IOException("Unknown message " + type);
+
+				int count = in.readInt();
+				int[] ids = new int[count];
+				Phenotype[] networks = new Phenotype[count];
+				for (int i = 0; i < count; i++) {
+					ids[i] = in.readInt();
+					networks[i] = Phenotype.read(in, this.activationFunction);
+				}
+
+				double[] fitnesses = new double[count];
+				String[] errors = new String[count];
+				this.calculate(networks, fitnesses, errors);
+
+				out.writeInt(count);
+				for (int i = 0; i < count; i++) {
+					out.writeInt(ids[i]);
+					if (errors[i] == null) {
+						out.writeByte(Protocol.RESULT_OK);
+						out.writeDouble(fitnesses[i]);
+					} else {
+						out.writeByte(Protocol.RESULT_FAILED);
+						out.writeUTF(errors[i]);
+					}
+				}
+				out.flush();
+			}
+		} catch (EOFException e) {
+			// the coordinator closed the connection
+		} catch (IOException e) {
+			this.listener.connectionLost(e);
+		}
+	}
+
+	private void calculate(Phenotype[] networks, double[] fitnesses, String[] errors) {
+		if (this.fitnessCalculator.isThreadSafe()) {
+			Tasks.forEach(ForkJoinPool.commonPool(), networks.length, 1, i -> this.calculate(networks, fitnesses, errors, i));
+		} else {
+			// multiple coordinators may be connected at once
+			synchronized (this.fitnessCalculator) {
+				for (int i = 0; i < networks.length; i++) {
+					this.calculate(networks, fitnesses, errors, i);
+				}
+			}
+		}
+	}
+
+	private void calculate(Phenotype[] networks, double[] fitnesses, String[] errors, int i) {
+		try {
+			fitnesses[i] = this.fitnessCalculator.getFitness(new RemoteNetwork(networks[i]));
+		} catch (RuntimeException e) {
+			errors[i] = String.valueOf(e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.serverSocket.close();
+		this.connections.shutdownNow();
+	}
+
+	/**
+	 * A network received from the coordinator, its fitness is not known by the worker.
+	 */
+	private static class RemoteNetwork implements Network {
+
+		private final Phenotype phenotype;
+
+		public RemoteNetwork(Phenotype phenotype) {
+			this.phenotype = phenotype;
+		}
+
+		@Override
+		public double[] calculate(double[] input) {
+			return this.phenotype.calculate(input);
+		}
+
+		@Override
+		public int getInputCount() {
+			return this.phenotype.getInputCount();
+		}
+
+		@Override
+		public void calculate(double[][] inputs, double[][] outputs) {
+			this.phenotype.calculate(inputs, outputs);
+		}
+
+		@Override
+		public void calculate(double[] inputs, double[] outputs, int samples) {
+			this.phenotype.calculate(inputs, outputs, samples);
+		}
+
+		@Override
+		public void calculate(float[] inputs, float[] outputs, int samples) {
+			this.phenotype.calculate(inputs, outputs, samples);
+		}
+
+		@Override
+		public void reset() {
+			this.phenotype.reset();
+		}
+
+		@Override
+		public double getFitness() {
+			throw new UnsupportedOperationException("The fitness is calculated by the worker");
+		}
+	}
+
+	/**
+	 * Starts a worker, the fitness calculator and activation function are given by their class names and need a public constructor without arguments.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: FitnessWorker <port> <fitness calculator class> [activation function class]");
+			return;
+		}
+
+		int port = Integer.parseInt(args[0]);
+		FitnessCalculator calculator = (FitnessCalculator) Class.forName(args[1]).getConstructor().newInstance();
+		ActivationFunction function = args.length > 2 ? (ActivationFunction) Class.forName(args[2]).getConstructor().newInstance() : new CustomizedSigmoidActivation();
+
+		try (FitnessWorker worker = new FitnessWorker(port, function, calculator)) {
+			worker.setListener(new Listener() {
+
+				@Override
+				public void acceptFailed(IOException e) {
+					System.err.println("Could not accept coordinator: " + e.getMessage());
+				}
+
+				@Override
+				public void connectionLost(IOException e) {
+					System.err.println("Lost connection to coordinator: " + e.getMessage());
+				}
+			});
+			System.out.println("Fitness worker is listening on port " + worker.getPort());
+			worker.run();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+/**
+ * Describes a generation which has been bred and evaluated.
+ */
+public class GenerationEvent {
+
+	private final int generation;
+	private final int species;
+	private final Network best;
+	private final int bestId;
+	private final double bestFitness;
+	private final int bestSpecies;
+	private final int bestSpeciesSize;
+	private final MetricsSnapshot metrics;
+
+	public GenerationEvent(int generation, int species, Network best, int bestId, double bestFitness, int bestSpecies, int bestSpeciesSize, MetricsSnapshot metrics) {
+		this.generation = generation;
+		this.species = species;
+		this.best = best;
+		this.bestId = bestId;
+		this.bestFitness = bestFitness;
+		this.bestSpecies = bestSpecies;
+		this.bestSpeciesSize = bestSpeciesSize;
+		this.metrics = metrics;
+	}
+
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Returns the amount of species in the generation.
+	 */
+	public int getSpecies() {
+		return species;
+	}
+
+	/**
+	 * Returns the best performing genome of the generation.
+	 */
+	public Network getBest() {
+		return best;
+	}
+
+	public int getBestId() {
+		return bestId;
+	}
+
+	public double getBestFitness() {
+		return bestFitness;
+	}
+
+	/**
+	 * Returns the id of the species of the best performing genome.
+	 */
+	public int getBestSpecies() {
+		return bestSpecies;
+	}
+
+	public int getBestSpeciesSize() {
+		return bestSpeciesSize;
+	}
+
+	/**
+	 * Returns the metrics at the end of the generation.
+	 */
+	public MetricsSnapshot getMetrics() {
+		return metrics;
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+/**
+ * The sigmoid of CustomizedSigmoidActivation, interpolated linearly between the values of a table.
+ * 
+ * The error of linear interpolation is at most step^2 / 8 times the largest second derivative of the sigmoid,
+ * so the step of the table is chosen to keep it below half the maximum error. Beyond the point where the sigmoid
+ * is within half the maximum error of 0 or 1, 0 or 1 is returned. A maximum error of 1e-4 needs a table of about
+ * 300 values, 1e-6 about 4500.
+ */
+public class LookupSigmoidActivation implements ActivationFunction {
+
+	private static final double STEEPNESS = 4.9;
+
+	/**
+	 * The largest second derivative of 1 / (1 + e^(-4.9 * x)), which is 4.9^2 / (6 * sqrt(3)).
+	 */
+	private static final double MAX_SECOND_DERIVATIVE = STEEPNESS * STEEPNESS / (6 * Math.sqrt(3));
+
+	private static final int MAX_TABLE_SIZE = 1 << 22;
+
+	private final double maxError;
+	private final double limit;
+	private final double scale;
+	private final double[] table;
+
+	/**
+	 * Uses a maximum error of 1e-4, a public constructor without arguments is needed by FitnessWorker.
+	 */
+	public LookupSigmoidActivation() {
+		this(1e-4);
+	}
+
+	public LookupSigmoidActivation(double maxError) {
+		if (!(maxError > 0 && maxError < 0.5))
+			throw new IllegalArgumentException("Maximum error " + maxError + " must be between 0 and 0.5");
+
+		this.maxError = maxError;
+		// 1 - sigmoid = 1 / (1 + e^(4.9x)), which is maxError / 2 at the limit
+		this.limit = Math.log(2 / maxError - 1) / STEEPNESS;
+
+		double step = Math.sqrt(4 * maxError / MAX_SECOND_DERIVATIVE);
+		double intervals = Math.ceil(2 * this.limit / step);
+		if (intervals > MAX_TABLE_SIZE)
+			throw new IllegalArgumentException("Maximum error " + maxError + " needs a table of " + (long) intervals + " values, use a RationalSigmoidActivation instead");
+
+		this.scale = intervals / (2 * this.limit);
+
+		// one extra value, so rounding at the upper end can't read outside the table
+		this.table = new double[(int) intervals + 2];
+		for (int i = 0; i < this.table.length; i++) {
+			this.table[i] = 1 / (1 + Math.exp(-STEEPNESS * (i / this.scale - this.limit)));
+		}
+	}
+
+	public double getMaxError() {
+		return maxError;
+	}
+
+	/**
+	 * Returns the amount of values in the table.
+	 */
+	public int getTableSize() {
+		return this.table.length;
+	}
+
+	@Override
+	public double activate(double x) {
+		if (x >= this.limit)
+			return 1;
+		if (!(x > -this.limit))
+			return x < 0 ? 0 : x; // keeps NaN
+
+		double position = (x + this.limit) * this.scale;
+		int index = (int) position;
+		double low = this.table[index];
+		return low + (this.table[index + 1] - low) * (position - index);
+	}
+
+	@Override
+	public void activate(double[] in, double[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = this.activate(in[i]);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+import java.util.Map;
+
+/**
+ * Exposes the metrics of a training run over JMX, see Mythan.registerMetricsMBean().
+ */
+public interface MetricsMXBean {
+
+	public int getGeneration();
+
+	/**
+	 * The time spent in every phase while creating the last generation, in milliseconds.
+	 */
+	public Map<String, Double> getLastGenerationMillis();
+
+	/**
+	 * The time spent in every phase since the start of the run, in milliseconds.
+	 */
+	public Map<String, Double> getTotalMillis();
+
+	public Map<String, Long> getCounters();
+
+	public double getGenomeSizeMean();
+
+	public long getGenomeSizeMax();
+
+	public double getEvaluationLatencyMeanMillis();
+
+	public double getEvaluationLatencyP99Millis();
+}
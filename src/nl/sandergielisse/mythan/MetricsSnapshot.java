@@ -0,0 +1,199 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+import java.util.Arrays;
+
+/**
+ * The metrics of a training run at one moment, see Mythan.getMetrics().
+ * 
+ * Times are in nanoseconds. In island mode, the times and counters of all islands are added together.
+ */
+public class MetricsSnapshot {
+
+	/**
+	 * The phases of creating a generation. Reproduction includes crossover and mutation, crossover includes the mutation of the child.
+	 */
+	public enum Phase {
+		EVALUATION,
+		ELIMINATION,
+		REPRODUCTION,
+		CROSSOVER,
+		MUTATION,
+		SPECIATION,;
+	}
+
+	public enum Counter {
+		DISTANCE_COMPUTATIONS,
+		MUTATION_FAILURES,
+		FITNESS_EVALUATIONS,
+		FITNESS_CACHE_HITS,
+		FITNESS_CACHE_MISSES,
+
+		/**
+		 * Events which were not delivered to the listeners, because the listeners couldn't keep up.
+		 */
+		DROPPED_EVENTS,;
+	}
+
+	private final int generation;
+	private final long[] lastGeneration;
+	private final long[] total;
+	private final long[] counters;
+	private final Distribution genomeSize;
+	private final Distribution evaluationLatency;
+
+	public MetricsSnapshot(int generation, long[] lastGeneration, long[] total, long[] counters, Distribution genomeSize, Distribution evaluationLatency) {
+		this.generation = generation;
+		this.lastGeneration = lastGeneration;
+		this.total = total;
+		this.counters = counters;
+		this.genomeSize = genomeSize;
+		this.evaluationLatency = evaluationLatency;
+	}
+
+	/**
+	 * Returns the last generation which was finished.
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Returns the time spent in the given phase while creating the last generation.
+	 */
+	public long getLastGenerationTime(Phase phase) {
+		return this.lastGeneration[phase.ordinal()];
+	}
+
+	/**
+	 * Returns the time spent in the given phase since the start of the run.
+	 */
+	public long getTotalTime(Phase phase) {
+		return this.total[phase.ordinal()];
+	}
+
+	public long getCount(Counter counter) {
+		return this.counters[counter.ordinal()];
+	}
+
+	/**
+	 * Returns the distribution of the amount of genes of the genomes in the last generation.
+	 */
+	public Distribution getGenomeSize() {
+		return genomeSize;
+	}
+
+	/**
+	 * Returns the distribution of the time a fitness calculation took, remote calculations are not included.
+	 */
+	public Distribution getEvaluationLatency() {
+		return evaluationLatency;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("Metrics of generation " + this.generation + ":");
+		for (Phase phase : Phase.values()) {
+			builder.append(String.format(" %s=%.2fms", phase.name().toLowerCase(), this.getLastGenerationTime(phase) / 1e6));
+		}
+		for (Counter counter : Counter.values()) {
+			builder.append(" ").append(counter.name().toLowerCase()).append("=").append(this.getCount(counter));
+		}
+		builder.append(" genome_size=").append(this.genomeSize);
+		builder.append(" evaluation_latency=").append(this.evaluationLatency);
+		return builder.toString();
+	}
+
+	/**
+	 * A histogram of values, the value of the n-th bucket is between 2^(n-1) and 2^n - 1 so percentiles are estimates.
+	 */
+	public static class Distribution {
+
+		private final long count;
+		private final long sum;
+		private final long min;
+		private final long max;
+		private final long[] buckets;
+
+		public Distribution(long count, long sum, long min, long max, long[] buckets) {
+			this.count = count;
+			this.sum = sum;
+			this.min = min;
+			this.max = max;
+			this.buckets = buckets;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMean() {
+			return this.count == 0 ? 0 : this.sum / (double) this.count;
+		}
+
+		/**
+		 * Returns 0 if there are no values.
+		 */
+		public long getMin() {
+			return this.count == 0 ? 0 : this.min;
+		}
+
+		public long getMax() {
+			return this.count == 0 ? 0 : this.max;
+		}
+
+		/**
+		 * Returns an upper bound of the given percentile (between 0 and 100), which is at most twice the real value.
+		 */
+		public long getPercentile(double percentile) {
+			if (percentile < 0 || percentile > 100)
+				throw new IllegalArgumentException("Percentile (" + percentile + ") must be between 0 and 100");
+			if (this.count == 0)
+				return 0;
+
+			long rank = (long) Math.ceil(percentile / 100 * this.count);
+			long seen = 0;
+			for (int b = 0; b < this.buckets.length; b++) {
+				seen += this.buckets[b];
+				if (seen >= rank && seen > 0) {
+					long upper = b == 0 ? 0 : b >= 63 ? Long.MAX_VALUE : (1L << b) - 1;
+					return Math.max(this.getMin(), Math.min(upper, this.max));
+				}
+			}
+			return this.max;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("[count=%d, mean=%.1f, p50=%d, p99=%d, max=%d]", this.count, this.getMean(), this.getPercentile(50), this.getPercentile(99), this.getMax());
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(this.buckets);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Distribution))
+				return false;
+
+			Distribution other = (Distribution) obj;
+			return this.count == other.count && this.sum == other.sum && this.min == other.min && this.max == other.max && Arrays.equals(this.buckets, other.buckets);
+		}
+	}
+}
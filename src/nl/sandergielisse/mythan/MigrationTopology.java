@@ -0,0 +1,32 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+/**
+ * Decides to which islands the best genomes of an island migrate in island mode.
+ */
+public enum MigrationTopology {
+
+	/**
+	 * Every island sends its best genomes to the next island, the last island sends them to the first.
+	 */
+	RING,
+
+	/**
+	 * Every island sends its best genomes to all other islands.
+	 */
+	FULLY_CONNECTED,;
+}
@@ -15,7 +15,16 @@
  */
 package nl.sandergielisse.mythan;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import nl.sandergielisse.mythan.internal.Checkpoint;
 import nl.sandergielisse.mythan.internal.EvolutionCore;
+import nl.sandergielisse.mythan.internal.IslandCore;
+import nl.sandergielisse.mythan.internal.genes.NetworkCompiler;
 
 public interface Mythan {
 
@@ -23,17 +32,108 @@ public interface Mythan {
 		return new EvolutionCore(inputSize, outputSize, function, calculator);
 	}
 
+	/**
+	 * Training an instance with the same seed and settings gives the same result every time, as long as the fitness calculator is deterministic.
+	 */
+	public static Mythan newInstance(int inputSize, int outputSize, ActivationFunction function, FitnessCalculator calculator, long seed) {
+		return new EvolutionCore(inputSize, outputSize, function, calculator, seed);
+	}
+
+	/**
+	 * Creates an instance which evolves the given amount of populations (islands) at the same time, on their own threads.
+	 * The best genomes of every island migrate to other islands once every MIGRATION_INTERVAL generations.
+	 * A run with the same seed gives the same result, the events of the islands may arrive in another order.
+	 */
+	public static Mythan newIslands(int islands, MigrationTopology topology, int inputSize, int outputSize, ActivationFunction function, FitnessCalculator calculator, long seed) {
+		return new IslandCore(islands, topology, inputSize, outputSize, function, calculator, seed);
+	}
+
+	/**
+	 * Restores a training run from a checkpoint, trainToFitness() continues where the run left off.
+	 * The activation function and fitness calculator are not part of the checkpoint.
+	 */
+	public static Mythan resume(Path checkpoint, ActivationFunction function, FitnessCalculator calculator) throws IOException {
+		return Checkpoint.load(checkpoint, function, calculator);
+	}
+
+	/**
+	 * Returns a network which calculates exactly the same outputs as the given network, but which is compiled into a class
+	 * of its own so the JIT can optimize it as a whole. This is useful for networks which are calculated very often after
+	 * training. Recurrent networks and networks which are too large to compile profitably are returned unchanged.
+	 */
+	public static Network compile(Network network) {
+		return NetworkCompiler.compile(network);
+	}
+
 	public int getInputSize();
 
 	public int getOutputSize();
 
+	/**
+	 * Returns the seed of this instance, which can be used to reproduce a run.
+	 */
+	public long getSeed();
+
 	public double getSetting(Setting setting);
 
 	public void setSetting(Setting setting, double value);
 
+	/**
+	 * When the run was resumed from a checkpoint, the population size of the checkpoint is used.
+	 */
 	public void trainToFitness(int populationSize, double targetFitness);
 
+	/**
+	 * Saves the training run to the given file every given amount of generations. When null is given, no checkpoints are saved.
+	 */
+	public void setCheckpoints(Path file, int everyGenerations);
+
+	/**
+	 * Saves the training run to the given file, should not be called while a generation is being created.
+	 */
+	public void saveCheckpoint(Path file) throws IOException;
+
 	public FitnessCalculator getFitnessCalculator();
 
+	/**
+	 * Sets the executor used to calculate the fitness of a generation and to divide the new generation in species,
+	 * the common ForkJoinPool is used by default. When null is given, everything is done on the training thread.
+	 * The fitness is only calculated on the executor when FitnessCalculator.isThreadSafe() returns true.
+	 */
+	public void setFitnessExecutor(Executor executor);
+
+	/**
+	 * Calculates the fitness of every generation on the given workers, which are started with FitnessWorker.
+	 * Genomes are evaluated locally if no worker can be reached. When null is given, the workers are not used anymore.
+	 */
+	public void setRemoteWorkers(List<InetSocketAddress> workers);
+
 	public ActivationFunction getActivationFunction();
+
+	/**
+	 * Adds a listener which receives the events of the training run, use a ConsoleListener to print the progress.
+	 */
+	public void addListener(EvolutionListener listener);
+
+	public void removeListener(EvolutionListener listener);
+
+	/**
+	 * Returns the timings and counters of the training run so far.
+	 */
+	public MetricsSnapshot getMetrics();
+
+	/**
+	 * Registers the metrics of this instance as an MXBean with the given name in the platform MBean server.
+	 */
+	public void registerMetricsMBean(String name);
+
+	/**
+	 * Returns the amount of fitness evaluations which were skipped because the fitness was cached.
+	 */
+	public long getFitnessCacheHits();
+
+	/**
+	 * Returns the amount of fitness evaluations which were not cached, 0 if the cache is disabled.
+	 */
+	public long getFitnessCacheMisses();
 }
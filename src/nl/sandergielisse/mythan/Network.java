@@ -19,5 +19,86 @@ public interface Network {
 
 	public double[] calculate(double[] input);
 
+	/**
+	 * Returns the amount of inputs of a single sample, the length of the input given to calculate(double[]).
+	 */
+	public int getInputCount();
+
+	/**
+	 * Calculates the output for every row of the inputs and stores it in the same row of the outputs.
+	 * The networks of the library calculate this a lot faster than calling calculate(double[]) for every row,
+	 * which is what the default implementation does.
+	 */
+	public default void calculate(double[][] inputs, double[][] outputs) {
+		if (inputs.length != outputs.length) {
+			throw new IllegalArgumentException("Amount of inputs " + inputs.length + " was not equal to the amount of outputs " + outputs.length);
+		}
+
+		for (int k = 0; k < inputs.length; k++) {
+			double[] output = this.calculate(inputs[k]);
+			System.arraycopy(output, 0, outputs[k], 0, output.length);
+		}
+	}
+
+	/**
+	 * Calculates the output for the given amount of samples. The inputs are stored row after row,
+	 * so the input of the n-th sample starts at n * getInputCount(), the outputs are stored the same way.
+	 * The buffers must hold at least the given amount of samples, values after the last sample are ignored.
+	 * 
+	 * The default implementation calls calculate(double[]) for every sample.
+	 */
+	public default void calculate(double[] inputs, double[] outputs, int samples) {
+		if (samples <= 0)
+			return;
+		int inputSize = this.getInputCount();
+		if (inputs.length < samples * inputSize) {
+			throw new IllegalArgumentException("Input buffer of size " + inputs.length + " can not hold " + samples + " samples");
+		}
+
+		double[] input = new double[inputSize];
+		for (int k = 0; k < samples; k++) {
+			System.arraycopy(inputs, k * inputSize, input, 0, inputSize);
+			double[] output = this.calculate(input);
+			if (outputs.length < samples * output.length) {
+				throw new IllegalArgumentException("Output buffer of size " + outputs.length + " can not hold " + samples + " samples");
+			}
+			System.arraycopy(output, 0, outputs, k * output.length, output.length);
+		}
+	}
+
+	/**
+	 * Same as calculate(double[], double[], int) for samples stored as floats, which takes half the memory.
+	 * Networks evolved with Setting.SINGLE_PRECISION calculate these without converting them to doubles.
+	 * The default implementation converts every sample to doubles and calls calculate(double[]).
+	 */
+	public default void calculate(float[] inputs, float[] outputs, int samples) {
+		if (samples <= 0)
+			return;
+		int inputSize = this.getInputCount();
+		if (inputs.length < samples * inputSize) {
+			throw new IllegalArgumentException("Input buffer of size " + inputs.length + " can not hold " + samples + " samples");
+		}
+
+		double[] input = new double[inputSize];
+		for (int k = 0; k < samples; k++) {
+			for (int i = 0; i < inputSize; i++)
+				input[i] = inputs[k * inputSize + i];
+
+			double[] output = this.calculate(input);
+			if (outputs.length < samples * output.length) {
+				throw new IllegalArgumentException("Output buffer of size " + outputs.length + " can not hold " + samples + " samples");
+			}
+			for (int i = 0; i < output.length; i++)
+				outputs[k * output.length + i] = (float) output[i];
+		}
+	}
+
+	/**
+	 * Sets the values of a recurrent network back to zero, so the next call starts a new sequence, see Setting.RECURRENT.
+	 * Feed forward networks don't keep any values between calls, so nothing happens for them.
+	 */
+	public default void reset() {
+	}
+
 	public double getFitness();
 }
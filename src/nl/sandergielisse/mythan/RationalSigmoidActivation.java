@@ -0,0 +1,147 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan;
+
+/**
+ * The sigmoid of CustomizedSigmoidActivation, approximated by a rational function so Math.exp is not needed.
+ * 
+ * The sigmoid equals 0.5 + 0.5 * tanh(2.45 * x), where tanh(t) is approximated by a convergent of its continued
+ * fraction t / (1 + t^2 / (3 + t^2 / (5 + ...))), which is evaluated as t * P(t^2) / Q(t^2) with a single division.
+ * Beyond the point where the sigmoid is within half the maximum error of 0 or 1, 0 or 1 is returned. The fraction
+ * is cut off at the smallest depth which keeps the remaining error below half the maximum error, so a larger
+ * maximum error makes the function faster.
+ */
+public class RationalSigmoidActivation implements ActivationFunction {
+
+	private static final double HALF_STEEPNESS = 4.9 / 2;
+	private static final int MAX_DEPTH = 40;
+
+	private final double maxError;
+	private final double limit;
+	private final double[] numerator;
+	private final double[] denominator;
+
+	/**
+	 * Uses a maximum error of 1e-6, a public constructor without arguments is needed by FitnessWorker.
+	 */
+	public RationalSigmoidActivation() {
+		this(1e-6);
+	}
+
+	public RationalSigmoidActivation(double maxError) {
+		if (!(maxError > 0 && maxError < 0.5))
+			throw new IllegalArgumentException("Maximum error " + maxError + " must be between 0 and 0.5");
+
+		this.maxError = maxError;
+		// 1 - sigmoid = 1 / (1 + e^(2t)), which is maxError / 2 at the limit
+		this.limit = 0.5 * Math.log(2 / maxError - 1);
+
+		/**
+		 * The numerators and denominators of the convergents satisfy P(k) = (2k - 1) * P(k - 1) + z * P(k - 2),
+		 * starting with P(0) = 0, P(1) = 1, Q(0) = 1 and Q(1) = 1.
+		 */
+		double[] previousP = { 0 }, p = { 1 };
+		double[] previousQ = { 1 }, q = { 1 };
+		for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+			if (depth > 1) {
+				double[] nextP = next(p, previousP, 2 * depth - 1);
+				double[] nextQ = next(q, previousQ, 2 * depth - 1);
+				previousP = p;
+				previousQ = q;
+				p = nextP;
+				q = nextQ;
+			}
+
+			if (p.length == q.length && maxError(p, q, this.limit) <= maxError / 2) {
+				// scale both so the coefficients stay small, which doesn't change the fraction
+				double scale = q[0];
+				this.numerator = divide(p, scale);
+				this.denominator = divide(q, scale);
+				return;
+			}
+		}
+		throw new IllegalArgumentException("Maximum error " + maxError + " can not be reached");
+	}
+
+	private static double[] next(double[] current, double[] previous, int factor) {
+		double[] next = new double[Math.max(current.length, previous.length + 1)];
+		for (int i = 0; i < current.length; i++)
+			next[i] += factor * current[i];
+		for (int i = 0; i < previous.length; i++)
+			next[i + 1] += previous[i];
+		return next;
+	}
+
+	private static double[] divide(double[] coefficients, double scale) {
+		double[] result = new double[coefficients.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = coefficients[i] / scale;
+		return result;
+	}
+
+	/**
+	 * The error of the sigmoid calculated with the given fraction, which grows with t, so it is checked
+	 * at the limit and at a few thousand points before it.
+	 */
+	private static double maxError(double[] p, double[] q, double limit) {
+		double max = 0;
+		for (int i = 0; i <= 4096; i++) {
+			double t = limit * i / 4096;
+			double exact = 1 / (1 + Math.exp(-2 * t));
+			max = Math.max(max, Math.abs(exact - (0.5 + 0.5 * t * horner(p, t * t) / horner(q, t * t))));
+		}
+		return max;
+	}
+
+	private static double horner(double[] coefficients, double z) {
+		double result = 0;
+		for (int i = coefficients.length - 1; i >= 0; i--)
+			result = result * z + coefficients[i];
+		return result;
+	}
+
+	public double getMaxError() {
+		return maxError;
+	}
+
+	@Override
+	public double activate(double x) {
+		double t = HALF_STEEPNESS * x;
+		if (t >= this.limit)
+			return 1;
+		if (t <= -this.limit)
+			return 0;
+
+		// both polynomials have the same degree, so they are evaluated in the same loop
+		final double[] numerator = this.numerator;
+		final double[] denominator = this.denominator;
+		double z = t * t;
+		double p = 0;
+		double q = 0;
+		for (int i = numerator.length - 1; i >= 0; i--) {
+			p = p * z + numerator[i];
+			q = q * z + denominator[i];
+		}
+		return Math.min(1, Math.max(0, 0.5 + 0.5 * t * p / q));
+	}
+
+	@Override
+	public void activate(double[] in, double[] out, int from, int to) {
+		for (int i = from; i < to; i++) {
+			out[i] = this.activate(in[i]);
+		}
+	}
+}
@@ -47,6 +47,12 @@ public enum Setting {
 	 */
 	MUTATION_NEW_NODE_CHANCE(0.03),
 
+	/**
+	 * The chance a hidden node gets another activation type as result of a mutation, see ActivationType.
+	 * When 0, every node uses the activation function of the instance.
+	 */
+	MUTATION_ACTIVATION_CHANCE(0),
+
 	/**
 	 * Constant in distance formula.
 	 */
@@ -62,6 +68,11 @@ public enum Setting {
 	 */
 	DISTANCE_WEIGHTS_WEIGHT(0.4),
 
+	/**
+	 * Constant in distance formula, multiplied by the amount of nodes with a different activation type.
+	 */
+	DISTANCE_ACTIVATION_WEIGHT(0),
+
 	/**
 	 * The distance allowed between two genomes in the same species.
 	 */
@@ -77,7 +88,45 @@ public enum Setting {
 	 */
 	BREED_CROSS_CHANCE(0.75),
 
-	MUTATION_WEIGHT_CHANCE_RANDOM_RANGE(5.0),;
+	MUTATION_WEIGHT_CHANCE_RANDOM_RANGE(5.0),
+
+	/**
+	 * The amount of fitnesses remembered, so networks which were evaluated before are not evaluated again. 0 disables the cache.
+	 */
+	FITNESS_CACHE_SIZE(0),
+
+	/**
+	 * Weights are rounded to a multiple of this value before looking up the cached fitness. 0 means weights must match exactly.
+	 */
+	FITNESS_CACHE_QUANTIZATION(0),
+
+	/**
+	 * In island mode, the best genomes of every island migrate to other islands once every this amount of generations.
+	 */
+	MIGRATION_INTERVAL(10),
+
+	/**
+	 * In island mode, the amount of best genomes of an island which migrate to other islands.
+	 */
+	MIGRATION_SIZE(2),
+
+	/**
+	 * The amount of seconds a fitness worker may take to answer, after which the connection is treated as lost
+	 * and its unanswered batches are evaluated elsewhere. 0 waits forever.
+	 */
+	REMOTE_TIMEOUT(60),
+
+	/**
+	 * When 1, the weights are stored as 32 bit floats and networks are calculated with floats instead of doubles.
+	 * This halves the memory used by the genes and batches. Should be set before training starts.
+	 */
+	SINGLE_PRECISION(0),
+
+	/**
+	 * When 1, new connections may form cycles. Every call of Network.calculate() is then a single step in which every node
+	 * uses the values of the previous step, which are kept until Network.reset() is called. Should be set before training starts.
+	 */
+	RECURRENT(0),;
 
 	private final double defaultSetting;
 
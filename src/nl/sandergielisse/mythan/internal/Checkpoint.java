@@ -0,0 +1,175 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import nl.sandergielisse.mythan.ActivationFunction;
+import nl.sandergielisse.mythan.FitnessCalculator;
+import nl.sandergielisse.mythan.Setting;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+
+/**
+ * Saves and restores the full state of a training run in a binary file, so the run can be continued
+ * after the program stopped. A checkpoint can only be written between generations.
+ * 
+ * The champion fitness and the metrics are saved as well, so a resumed run reports the same champions and totals
+ * as an uninterrupted run. The fitness cache is not saved, it is empty after resuming.
+ */
+public class Checkpoint {
+
+	private static final int MAGIC = 0x4D59544E; // MYTN
+	private static final int VERSION = 3;
+
+	/**
+	 * Writes the checkpoint to a temporary file first, so an existing checkpoint is only replaced by a complete one.
+	 * When the file system can't move the file atomically, the existing checkpoint is replaced by a normal move.
+	 */
+	public static void save(EvolutionCore core, Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+		try (CheckpointWriter out = new CheckpointWriter(FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+
+			out.putInt(core.getInputSize());
+			out.putInt(core.getOutputSize());
+			out.putLong(core.getSeed());
+			out.putLong(core.getRandom().getSeed());
+			out.putLong(core.getRandom().getGamma());
+
+			out.putInt(Setting.values().length);
+			for (Setting setting : Setting.values()) {
+				out.putString(setting.name());
+				out.putDouble(core.getSetting(setting));
+			}
+
+			PopulationManager manager = core.getPopulationManager();
+			out.putInt(core.getInnovationRegistry().peekInnovationNumber());
+			out.putInt(Genome.peekNextId());
+			out.putInt(Species.peekNextId());
+			out.putInt(manager.getGeneration());
+			out.putInt(manager.getPopulationSize());
+			out.putDouble(manager.getChampionFitness());
+			core.getMetricsRegistry().write(out);
+
+			Genome latest = manager.getLatestFitness();
+			List<Species> species = manager.getSpecies();
+			out.putInt(species.size());
+			for (Species sp : species) {
+				out.putInt(sp.getId());
+				out.putDouble(sp.getHighestFitness());
+				out.putInt(sp.getFailedGenerations());
+
+				IndexedSet<Genome> members = sp.getMembers();
+				out.putInt(members.size());
+				int representative = -1;
+				for (int i = 0; i < members.size(); i++) {
+					Genome genome = members.get(i);
+					genome.write(out);
+					out.putBoolean(genome == latest);
+
+					if (genome == sp.getRepresentative())
+						representative = i;
+				}
+
+				// the representative is only written separately if it is not a member anymore
+				out.putInt(representative);
+				if (representative == -1) {
+					sp.getRepresentative().write(out);
+				}
+			}
+		}
+
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Restores the training run in a new core, the activation function and fitness calculator are not saved in the checkpoint.
+	 */
+	public static EvolutionCore load(Path file, ActivationFunction activationFunction, FitnessCalculator fitnessCalculator) throws IOException {
+		try (CheckpointReader in = new CheckpointReader(FileChannel.open(file, StandardOpenOption.READ))) {
+			if (in.getInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint");
+
+			int version = in.getInt();
+			if (version != VERSION)
+				throw new IOException("Checkpoint version " + version + " is not supported");
+
+			int inputSize = in.getInt();
+			int outputSize = in.getInt();
+			long seed = in.getLong();
+			long randomSeed = in.getLong();
+			long randomGamma = in.getLong();
+			EvolutionCore core = new EvolutionCore(inputSize, outputSize, activationFunction, fitnessCalculator, seed, new Random(randomSeed, randomGamma), null, null);
+
+			int settings = in.getInt();
+			for (int i = 0; i < settings; i++) {
+				String name = in.getString();
+				double value = in.getDouble();
+				try {
+					core.setSetting(Setting.valueOf(name), value);
+				} catch (IllegalArgumentException e) {
+					// the setting has been removed since the checkpoint was written
+				}
+			}
+
+			core.getInnovationRegistry().setNextInnovationNumber(in.getInt());
+			Genome.skipIds(in.getInt());
+			Species.skipIds(in.getInt());
+			int generation = in.getInt();
+			int populationSize = in.getInt();
+			double championFitness = in.getDouble();
+			core.getMetricsRegistry().read(in);
+
+			PopulationManager manager = core.getPopulationManager();
+			Population population = manager.getPopulation();
+			Genome latest = null;
+
+			int speciesCount = in.getInt();
+			for (int s = 0; s < speciesCount; s++) {
+				Species sp = new Species(in.getInt(), in.getDouble(), in.getInt());
+
+				int members = in.getInt();
+				for (int i = 0; i < members; i++) {
+					Genome genome = Genome.read(core, sp, in);
+					population.addGenome(sp, genome);
+
+					if (in.getBoolean())
+						latest = genome;
+				}
+
+				int representative = in.getInt();
+				sp.setRepresentative(representative == -1 ? Genome.read(core, sp, in) : sp.getMembers().get(representative));
+				population.getSpecies().add(sp);
+			}
+
+			manager.restore(generation, populationSize, latest, championFitness);
+			return core;
+		}
+	}
+}
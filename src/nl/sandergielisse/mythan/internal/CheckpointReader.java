@@ -0,0 +1,89 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the primitive values of a checkpoint from a file channel through a buffer.
+ */
+public class CheckpointReader implements Closeable {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+	public CheckpointReader(FileChannel channel) {
+		this.channel = channel;
+		this.buffer.flip(); // nothing has been read yet
+	}
+
+	public int getInt() throws IOException {
+		this.ensure(Integer.BYTES);
+		return this.buffer.getInt();
+	}
+
+	public long getLong() throws IOException {
+		this.ensure(Long.BYTES);
+		return this.buffer.getLong();
+	}
+
+	public double getDouble() throws IOException {
+		this.ensure(Double.BYTES);
+		return this.buffer.getDouble();
+	}
+
+	public boolean getBoolean() throws IOException {
+		this.ensure(1);
+		return this.buffer.get() != 0;
+	}
+
+	public String getString() throws IOException {
+		int length = this.getInt();
+		if (length < 0 || length > this.buffer.capacity())
+			throw new IOException("Invalid string length " + length);
+
+		this.ensure(length);
+		byte[] bytes = new byte[length];
+		this.buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads from the channel until the given amount of bytes is available.
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (this.buffer.remaining() >= bytes)
+			return;
+
+		this.buffer.compact();
+		while (this.buffer.position() < bytes) {
+			if (this.channel.read(this.buffer) < 0) {
+				throw new EOFException("Checkpoint ended unexpectedly");
+			}
+		}
+		this.buffer.flip();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the primitive values of a checkpoint to a file channel through a buffer.
+ */
+public class CheckpointWriter implements Closeable {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+	public CheckpointWriter(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	public void putInt(int value) throws IOException {
+		this.ensure(Integer.BYTES);
+		this.buffer.putInt(value);
+	}
+
+	public void putLong(long value) throws IOException {
+		this.ensure(Long.BYTES);
+		this.buffer.putLong(value);
+	}
+
+	public void putDouble(double value) throws IOException {
+		this.ensure(Double.BYTES);
+		this.buffer.putDouble(value);
+	}
+
+	public void putBoolean(boolean value) throws IOException {
+		this.ensure(1);
+		this.buffer.put(value ? (byte) 1 : (byte) 0);
+	}
+
+	public void putString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > this.buffer.capacity() - Integer.BYTES)
+			throw new IllegalArgumentException("String of " + bytes.length + " bytes is too long");
+
+		this.ensure(Integer.BYTES + bytes.length);
+		this.buffer.putInt(bytes.length);
+		this.buffer.put(bytes);
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if (this.buffer.remaining() < bytes) {
+			this.flush();
+		}
+	}
+
+	public void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * Flushes the buffer, forces the data to the disk and closes the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.flush();
+			this.channel.force(true);
+		} finally {
+			this.channel.close();
+		}
+	}
+}
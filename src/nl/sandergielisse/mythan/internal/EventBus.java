@@ -0,0 +1,111 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import nl.sandergielisse.mythan.EvolutionListener;
+import nl.sandergielisse.mythan.MetricsSnapshot.Counter;
+
+/**
+ * Delivers events to the listeners on a separate thread, through a bounded queue.
+ * Publishing never blocks, when the queue is full the event is dropped.
+ */
+public class EventBus {
+
+	private static final int CAPACITY = 1024;
+
+	private final List<EvolutionListener> listeners = new CopyOnWriteArrayList<>();
+	private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(CAPACITY);
+	private final Metrics metrics;
+	private Thread thread;
+
+	public EventBus(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public void addListener(EvolutionListener listener) {
+		this.listeners.add(listener);
+	}
+
+	public void removeListener(EvolutionListener listener) {
+		this.listeners.remove(listener);
+	}
+
+	/**
+	 * Queues the event for every listener, does nothing when there are no listeners.
+	 */
+	public void publish(Consumer<EvolutionListener> event) {
+		if (this.listeners.isEmpty())
+			return;
+
+		this.start();
+		if (!this.queue.offer(() -> this.deliver(event))) {
+			this.metrics.increment(Counter.DROPPED_EVENTS);
+		}
+	}
+
+	private void deliver(Consumer<EvolutionListener> event) {
+		for (EvolutionListener listener : this.listeners) {
+			try {
+				event.accept(listener);
+			} catch (RuntimeException e) {
+				// a broken listener should not stop the other listeners
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Waits until all events published so far have been delivered.
+	 */
+	public void flush() {
+		synchronized (this) {
+			if (this.thread == null)
+				return;
+		}
+
+		CountDownLatch latch = new CountDownLatch(1);
+		try {
+			this.queue.put(latch::countDown);
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void start() {
+		if (this.thread != null)
+			return;
+
+		this.thread = new Thread(() -> {
+			while (true) {
+				try {
+					this.queue.take().run();
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}, "Mythan events");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+}
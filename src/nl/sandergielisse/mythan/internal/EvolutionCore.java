@@ -15,17 +15,30 @@
  */
 package nl.sandergielisse.mythan.internal;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import nl.sandergielisse.mythan.ActivationFunction;
+import nl.sandergielisse.mythan.EvolutionListener;
 import nl.sandergielisse.mythan.FitnessCalculator;
+import nl.sandergielisse.mythan.MetricsSnapshot;
+import nl.sandergielisse.mythan.MetricsSnapshot.Counter;
 import nl.sandergielisse.mythan.Mythan;
 import nl.sandergielisse.mythan.Setting;
-import nl.sandergielisse.mythan.internal.genes.Gene;
+import nl.sandergielisse.mythan.internal.genes.FitnessCache;
 import nl.sandergielisse.mythan.internal.genes.Genome;
+import nl.sandergielisse.mythan.internal.remote.RemoteEvaluator;
 
 public class EvolutionCore implements Mythan {
 
@@ -53,15 +66,45 @@ public class EvolutionCore implements Mythan {
 	};
 
 	private FitnessCalculator fitnessCalculator;
-	private int currentInnovationNumber = 1;
+	private final InnovationRegistry innovationRegistry;
+	private final Metrics metrics;
+	private final EventBus events;
+	private final IslandCore islands;
+	private final long seed;
+	private final Random random;
 	private final ActivationFunction activationFunction;
+	private Executor executor = ForkJoinPool.commonPool();
+	private FitnessCache fitnessCache;
+	private RemoteEvaluator remoteEvaluator;
+	private Path checkpointFile;
+	private int checkpointInterval;
 	private final PopulationManager populationManager = new PopulationManager(this);
 
 	public EvolutionCore(int in, int out, ActivationFunction activationFunction, FitnessCalculator calc) {
+		this(in, out, activationFunction, calc, Random.randomSeed());
+	}
+
+	public EvolutionCore(int in, int out, ActivationFunction activationFunction, FitnessCalculator calc, long seed) {
+		this(in, out, activationFunction, calc, seed, new Random(seed), null, null);
+	}
+
+	/**
+	 * Used when restoring a checkpoint, the master stream continues where it was.
+	 * 
+	 * When the core is an island, it shares its metrics with the other islands and uses the given innovation registry,
+	 * otherwise the innovation registry may be null.
+	 */
+	EvolutionCore(int in, int out, ActivationFunction activationFunction, FitnessCalculator calc, long seed, Random random, IslandCore islands, InnovationRegistry innovationRegistry) {
 		this.inputSize = in;
 		this.outputSize = out;
 		this.activationFunction = activationFunction;
 		this.fitnessCalculator = calc;
+		this.seed = seed;
+		this.random = random;
+		this.innovationRegistry = innovationRegistry == null ? new InnovationRegistry(in * out + 1, in + out + 1) : innovationRegistry;
+		this.metrics = islands == null ? new Metrics() : islands.getMetricsRegistry();
+		this.events = islands == null ? new EventBus(this.metrics) : islands.getEvents();
+		this.islands = islands;
 	}
 
 	@Override
@@ -82,10 +125,89 @@ public class EvolutionCore implements Mythan {
 	@Override
 	public void setSetting(Setting setting, double value) {
 		this.settings.put(setting, value);
+
+		if (setting == Setting.FITNESS_CACHE_SIZE || setting == Setting.FITNESS_CACHE_QUANTIZATION) {
+			int size = (int) this.getSetting(Setting.FITNESS_CACHE_SIZE);
+			this.fitnessCache = size > 0 ? new FitnessCache(size, this.getSetting(Setting.FITNESS_CACHE_QUANTIZATION)) : null;
+		}
+	}
+
+	/**
+	 * Returns true if new genomes store their weights as floats, see Setting.SINGLE_PRECISION.
+	 */
+	public boolean isSinglePrecision() {
+		return this.getSetting(Setting.SINGLE_PRECISION) != 0;
+	}
+
+	/**
+	 * Returns true if new connections may form cycles, see Setting.RECURRENT.
+	 */
+	public boolean isRecurrent() {
+		return this.getSetting(Setting.RECURRENT) != 0;
 	}
 
 	public int getNextInnovationNumber() {
-		return this.currentInnovationNumber++;
+		return this.innovationRegistry.getNextInnovationNumber();
+	}
+
+	@Override
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * The master stream, which may only be used by the training thread. Every genome splits its own stream from it.
+	 */
+	public Random getRandom() {
+		return random;
+	}
+
+	public InnovationRegistry getInnovationRegistry() {
+		return innovationRegistry;
+	}
+
+	/**
+	 * Returns true if this core is one of the islands of an island core, which starts and finishes the generations
+	 * of the shared metrics.
+	 */
+	public boolean isIsland() {
+		return this.islands != null;
+	}
+
+	public EventBus getEvents() {
+		return this.events;
+	}
+
+	@Override
+	public void addListener(EvolutionListener listener) {
+		this.events.addListener(listener);
+	}
+
+	@Override
+	public void removeListener(EvolutionListener listener) {
+		this.events.removeListener(listener);
+	}
+
+	public Metrics getMetricsRegistry() {
+		return this.metrics;
+	}
+
+	@Override
+	public MetricsSnapshot getMetrics() {
+		return this.metrics.snapshot();
+	}
+
+	@Override
+	public void registerMetricsMBean(String name) {
+		registerMetricsMBean(this.metrics, name);
+	}
+
+	static void registerMetricsMBean(Metrics metrics, String name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(metrics), new ObjectName("nl.sandergielisse.mythan:type=Metrics,name=" + ObjectName.quote(name)));
+		} catch (JMException e) {
+			throw new IllegalArgumentException("Could not register the metrics as " + name, e);
+		}
 	}
 
 	@Override
@@ -98,53 +220,103 @@ public class EvolutionCore implements Mythan {
 		return this.fitnessCalculator;
 	}
 
+	@Override
+	public void setFitnessExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns null if the fitness should be calculated on the training thread.
+	 */
+	public Executor getFitnessExecutor() {
+		if (!this.fitnessCalculator.isThreadSafe())
+			return null;
+
+		return this.executor;
+	}
+
+	/**
+	 * Returns the executor used for the work of the library itself, or null if everything should run on the training thread.
+	 */
+	public Executor getExecutor() {
+		return this.executor;
+	}
+
+	@Override
+	public void setRemoteWorkers(List<InetSocketAddress> workers) {
+		if (this.remoteEvaluator != null) {
+			this.remoteEvaluator.close();
+		}
+		this.remoteEvaluator = workers == null ? null : new RemoteEvaluator(this, workers);
+	}
+
+	/**
+	 * Returns null if the fitness is calculated locally.
+	 */
+	public RemoteEvaluator getRemoteEvaluator() {
+		return this.remoteEvaluator;
+	}
+
+	/**
+	 * Returns null if the cache is disabled.
+	 */
+	public FitnessCache getFitnessCache() {
+		return this.fitnessCache;
+	}
+
+	@Override
+	public long getFitnessCacheHits() {
+		return this.metrics.getCount(Counter.FITNESS_CACHE_HITS);
+	}
+
+	@Override
+	public long getFitnessCacheMisses() {
+		return this.metrics.getCount(Counter.FITNESS_CACHE_MISSES);
+	}
+
+	@Override
+	public void setCheckpoints(Path file, int everyGenerations) {
+		if (file != null && everyGenerations <= 0)
+			throw new IllegalArgumentException("Checkpoint interval (" + everyGenerations + ") must be positive");
+
+		this.checkpointFile = file;
+		this.checkpointInterval = everyGenerations;
+	}
+
+	@Override
+	public void saveCheckpoint(Path file) throws IOException {
+		Checkpoint.save(this, file);
+	}
+
 	public PopulationManager getPopulationManager() {
 		return this.populationManager;
 	}
 
 	@Override
 	public void trainToFitness(int populationSize, double targetFitness) {
-		this.populationManager.initialize(populationSize);
+		// a restored run continues with the population of the checkpoint
+		if (!this.populationManager.isInitialized()) {
+			this.populationManager.initialize(populationSize);
+		}
 		while (true) {
 			this.populationManager.newGeneration();
+
+			if (this.checkpointFile != null && this.populationManager.getGeneration() % this.checkpointInterval == 0) {
+				try {
+					this.saveCheckpoint(this.checkpointFile);
+				} catch (IOException e) {
+					throw new UncheckedIOException("Could not write checkpoint to " + this.checkpointFile, e);
+				}
+			}
+
 			Genome best = this.populationManager.getLatestFitness();
 			this.getFitnessCalculator().generationFinished(best);
 
 			if (best.getFitness() >= targetFitness) {
-
-				Set<Integer> hiddenNodes = new HashSet<>();
-				int enabledConns = 0;
-
-				for (Gene g : best.getGenes()) {
-					if (g.isEnabled()) {
-						enabledConns++;
-					}
-
-					{
-						int node = g.getFrom();
-						if (!best.isInputNode(node) && !best.isOutputNode(node)) {
-							if (!hiddenNodes.contains(node)) {
-								hiddenNodes.add(node);
-							}
-						}
-					}
-					{
-						int node = g.getTo();
-						if (!best.isInputNode(node) && !best.isOutputNode(node)) {
-							if (!hiddenNodes.contains(node)) {
-								hiddenNodes.add(node);
-							}
-						}
-					}
-				}
-
-				System.out.println("======================================= Mythan =======================================");
-				System.out.println("Solution was found with a fitness of " + best.getFitness() + " in generation " + this.populationManager.getGeneration());
-				System.out.println("The system had " + hiddenNodes.size() + " hidden units and " + enabledConns + " enabled connections");
-				for (Gene gene : best.getGenes()) {
-					System.out.println("	~ " + gene.toString());
-				}
-				System.out.println("======================================================================================");
+				int generation = this.populationManager.getGeneration();
+				double fitness = best.getFitness();
+				this.events.publish(l -> l.solutionFound(generation, best, fitness));
+				this.events.flush();
 				return;
 			}
 		}
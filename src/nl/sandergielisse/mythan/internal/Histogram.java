@@ -0,0 +1,98 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import nl.sandergielisse.mythan.MetricsSnapshot.Distribution;
+
+/**
+ * Counts non-negative values in buckets of powers of two, may be used by multiple threads at once.
+ */
+public class Histogram {
+
+	private final AtomicLongArray buckets = new AtomicLongArray(65);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+	public void record(long value) {
+		value = Math.max(0, value);
+
+		// bucket n holds the values which need exactly n bits
+		this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+		this.count.increment();
+		this.sum.add(value);
+		if (value < this.min.get())
+			this.min.accumulateAndGet(value, Math::min);
+		if (value > this.max.get())
+			this.max.accumulateAndGet(value, Math::max);
+	}
+
+	public void reset() {
+		for (int i = 0; i < this.buckets.length(); i++) {
+			this.buckets.set(i, 0);
+		}
+		this.count.reset();
+		this.sum.reset();
+		this.min.set(Long.MAX_VALUE);
+		this.max.set(Long.MIN_VALUE);
+	}
+
+	/**
+	 * Writes the counted values, so they can be restored by read().
+	 */
+	void write(CheckpointWriter out) throws IOException {
+		out.putLong(this.count.sum());
+		out.putLong(this.sum.sum());
+		out.putLong(this.min.get());
+		out.putLong(this.max.get());
+		out.putInt(this.buckets.length());
+		for (int i = 0; i < this.buckets.length(); i++) {
+			out.putLong(this.buckets.get(i));
+		}
+	}
+
+	/**
+	 * Replaces the counted values by the values written by write().
+	 */
+	void read(CheckpointReader in) throws IOException {
+		this.reset();
+		this.count.add(in.getLong());
+		this.sum.add(in.getLong());
+		this.min.set(in.getLong());
+		this.max.set(in.getLong());
+
+		int buckets = in.getInt();
+		if (buckets != this.buckets.length())
+			throw new IOException("Invalid histogram of " + buckets + " buckets");
+		for (int i = 0; i < buckets; i++) {
+			this.buckets.set(i, in.getLong());
+		}
+	}
+
+	public Distribution snapshot() {
+		long[] buckets = new long[this.buckets.length()];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = this.buckets.get(i);
+		}
+		return new Distribution(this.count.sum(), this.sum.sum(), this.min.get(), this.max.get(), buckets);
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A set which stores its elements in a list, so an element can be looked up by its index.
+ * 
+ * Adding, removing and picking a random element all take constant time. An element is removed by
+ * moving the last element into its place, so the order of the elements changes when removing.
+ */
+public class IndexedSet<T> extends AbstractSet<T> {
+
+	private final List<T> elements = new ArrayList<>();
+	private final Map<T, Integer> indices = new HashMap<>();
+
+	@Override
+	public boolean add(T element) {
+		if (this.indices.containsKey(element))
+			return false;
+
+		this.indices.put(element, this.elements.size());
+		this.elements.add(element);
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object element) {
+		Integer index = this.indices.remove(element);
+		if (index == null)
+			return false;
+
+		this.removeAt(index);
+		return true;
+	}
+
+	@Override
+	public boolean contains(Object element) {
+		return this.indices.containsKey(element);
+	}
+
+	@Override
+	public int size() {
+		return this.elements.size();
+	}
+
+	@Override
+	public void clear() {
+		this.elements.clear();
+		this.indices.clear();
+	}
+
+	public T get(int index) {
+		return this.elements.get(index);
+	}
+
+	/**
+	 * Returns a copy of the elements in their current order.
+	 */
+	public List<T> snapshot() {
+		return new ArrayList<>(this.elements);
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+
+			private int next = 0;
+			private int last = -1;
+
+			@Override
+			public boolean hasNext() {
+				return this.next < elements.size();
+			}
+
+			@Override
+			public T next() {
+				if (!this.hasNext())
+					throw new NoSuchElementException();
+
+				this.last = this.next++;
+				return elements.get(this.last);
+			}
+
+			@Override
+			public void remove() {
+				if (this.last < 0)
+					throw new IllegalStateException();
+
+				indices.remove(elements.get(this.last));
+				removeAt(this.last);
+
+				// the last element was moved into the removed spot, so it should be visited next
+				this.next = this.last;
+				this.last = -1;
+			}
+		};
+	}
+
+	/**
+	 * Moves the last element into the given index, the element at the index should already be removed from the index map.
+	 */
+	private void removeAt(int index) {
+		T last = this.elements.remove(this.elements.size() - 1);
+		if (index < this.elements.size()) {
+			this.elements.set(index, last);
+			this.indices.put(last, index);
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out innovation numbers. When the same structural mutation happens more than once in a
+ * generation, it gets the same innovation numbers every time, like described in the NEAT paper.
+ * 
+ * Innovation numbers are allocated atomically, so the registry may be used by multiple threads at once.
+ * 
+ * Every island has its own registry. The registries of the islands hand out every step-th innovation number
+ * and node, each starting at a different number, so two islands never give the same number to different
+ * mutations, no matter in which order the islands reproduce.
+ */
+public class InnovationRegistry {
+
+	private final AtomicInteger counter;
+	private final int firstNode;
+	private final int step;
+	private final ConcurrentMap<Long, Integer> connections = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Integer, NodeSplit> splits = new ConcurrentHashMap<>();
+
+	public InnovationRegistry(int firstInnovationNumber, int firstNode) {
+		this(firstInnovationNumber, firstNode, 1);
+	}
+
+	public InnovationRegistry(int firstInnovationNumber, int firstNode, int step) {
+		if (step < 1)
+			throw new IllegalArgumentException("Step (" + step + ") must be positive");
+
+		this.counter = new AtomicInteger(firstInnovationNumber);
+		this.firstNode = firstNode;
+		this.step = step;
+	}
+
+	/**
+	 * Returns a new innovation number which has never been used before.
+	 */
+	public int getNextInnovationNumber() {
+		return this.counter.getAndAdd(this.step);
+	}
+
+	/**
+	 * Returns the lowest node this registry may give out which is higher than the given node.
+	 */
+	public int getNextNode(int highestNode) {
+		if (highestNode < this.firstNode)
+			return this.firstNode;
+		return this.firstNode + ((highestNode - this.firstNode) / this.step + 1) * this.step;
+	}
+
+	/**
+	 * Returns the innovation number which will be given out next.
+	 */
+	public int peekInnovationNumber() {
+		return this.counter.get();
+	}
+
+	/**
+	 * Used when restoring a checkpoint, the given number will be given out next.
+	 */
+	public void setNextInnovationNumber(int next) {
+		this.counter.set(next);
+	}
+
+	/**
+	 * Returns the innovation number of a new connection between the given nodes.
+	 */
+	public int getConnectionInnovation(int from, int to) {
+		long key = ((long) from << 32) | (to & 0xFFFFFFFFL);
+		return this.connections.computeIfAbsent(key, k -> this.getNextInnovationNumber());
+	}
+
+	/**
+	 * Returns the node and innovation numbers used for splitting the gene with the given innovation number.
+	 * The proposed node is used if this is the first time the gene is split this generation.
+	 */
+	public NodeSplit getNodeSplit(int innovationNumber, int proposedNode) {
+		return this.splits.computeIfAbsent(innovationNumber, k -> new NodeSplit(proposedNode, this.getNextInnovationNumber(), this.getNextInnovationNumber()));
+	}
+
+	/**
+	 * Forgets the mutations of the previous generation.
+	 */
+	public void nextGeneration() {
+		this.connections.clear();
+		this.splits.clear();
+	}
+
+	public static class NodeSplit {
+
+		private final int node;
+		private final int inInnovationNumber;
+		private final int outInnovationNumber;
+
+		public NodeSplit(int node, int inInnovationNumber, int outInnovationNumber) {
+			this.node = node;
+			this.inInnovationNumber = inInnovationNumber;
+			this.outInnovationNumber = outInnovationNumber;
+		}
+
+		public int getNode() {
+			return node;
+		}
+
+		/**
+		 * The innovation number of the connection into the new node.
+		 */
+		public int getInInnovationNumber() {
+			return inInnovationNumber;
+		}
+
+		/**
+		 * The innovation number of the connection out of the new node.
+		 */
+		public int getOutInnovationNumber() {
+			return outInnovationNumber;
+		}
+	}
+}
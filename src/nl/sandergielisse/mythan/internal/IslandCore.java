@@ -0,0 +1,285 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nl.sandergielisse.mythan.ActivationFunction;
+import nl.sandergielisse.mythan.EvolutionListener;
+import nl.sandergielisse.mythan.FitnessCalculator;
+import nl.sandergielisse.mythan.MetricsSnapshot;
+import nl.sandergielisse.mythan.MetricsSnapshot.Counter;
+import nl.sandergielisse.mythan.MigrationTopology;
+import nl.sandergielisse.mythan.Mythan;
+import nl.sandergielisse.mythan.Setting;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+import nl.sandergielisse.mythan.internal.genes.Genome.GenomeSorter;
+
+/**
+ * Evolves multiple populations (islands) at the same time, every island is an evolution core with its own thread.
+ * Once every few generations the best genomes of every island migrate to other islands.
+ * 
+ * Every island has its own innovation registry, which hands out innovation numbers and nodes no other island
+ * uses, so a migrated genome never has a gene with the same innovation number as a different gene on the other
+ * island. The islands only share the genes of their initial genome. Because no island waits for another, the
+ * islands create their generations at the same time, and a run with a seed can still be reproduced.
+ */
+public class IslandCore implements Mythan {
+
+	private final EvolutionCore[] islands;
+	private final MigrationTopology topology;
+	private final Metrics metrics = new Metrics();
+	private final EventBus events = new EventBus(this.metrics);
+	private final long seed;
+
+	public IslandCore(int islands, MigrationTopology topology, int in, int out, ActivationFunction activationFunction, FitnessCalculator calc, long seed) {
+		if (islands < 1)
+			throw new IllegalArgumentException("Amount of islands (" + islands + ") must be positive");
+
+		this.islands = new EvolutionCore[islands];
+		this.topology = topology;
+		this.seed = seed;
+
+		Random random = new Random(seed);
+		for (int i = 0; i < islands; i++) {
+			long islandSeed = random.nextLong();
+			// island i uses the innovation numbers and nodes which are i more than a multiple of the amount of islands
+			InnovationRegistry registry = new InnovationRegistry(in * out + 1 + i, in + out + 1 + i, islands);
+			this.islands[i] = new EvolutionCore(in, out, activationFunction, calc, islandSeed, new Random(islandSeed), this, registry);
+		}
+	}
+
+	public EvolutionCore[] getIslands() {
+		return islands;
+	}
+
+	/**
+	 * The events of all islands are delivered by the same bus.
+	 */
+	public EventBus getEvents() {
+		return events;
+	}
+
+	@Override
+	public void addListener(EvolutionListener listener) {
+		this.events.addListener(listener);
+	}
+
+	@Override
+	public void removeListener(EvolutionListener listener) {
+		this.events.removeListener(listener);
+	}
+
+	/**
+	 * The metrics are shared by all islands.
+	 */
+	public Metrics getMetricsRegistry() {
+		return metrics;
+	}
+
+	@Override
+	public MetricsSnapshot getMetrics() {
+		return this.metrics.snapshot();
+	}
+
+	@Override
+	public void registerMetricsMBean(String name) {
+		EvolutionCore.registerMetricsMBean(this.metrics, name);
+	}
+
+	@Override
+	public int getInputSize() {
+		return this.islands[0].getInputSize();
+	}
+
+	@Override
+	public int getOutputSize() {
+		return this.islands[0].getOutputSize();
+	}
+
+	@Override
+	public long getSeed() {
+		return seed;
+	}
+
+	@Override
+	public double getSetting(Setting setting) {
+		return this.islands[0].getSetting(setting);
+	}
+
+	@Override
+	public void setSetting(Setting setting, double value) {
+		for (EvolutionCore island : this.islands) {
+			island.setSetting(setting, value);
+		}
+	}
+
+	@Override
+	public FitnessCalculator getFitnessCalculator() {
+		return this.islands[0].getFitnessCalculator();
+	}
+
+	@Override
+	public ActivationFunction getActivationFunction() {
+		return this.islands[0].getActivationFunction();
+	}
+
+	@Override
+	public void setFitnessExecutor(Executor executor) {
+		for (EvolutionCore island : this.islands) {
+			island.setFitnessExecutor(executor);
+		}
+	}
+
+	@Override
+	public void setRemoteWorkers(List<InetSocketAddress> workers) {
+		for (EvolutionCore island : this.islands) {
+			island.setRemoteWorkers(workers);
+		}
+	}
+
+	@Override
+	public long getFitnessCacheHits() {
+		return this.metrics.getCount(Counter.FITNESS_CACHE_HITS);
+	}
+
+	@Override
+	public long getFitnessCacheMisses() {
+		return this.metrics.getCount(Counter.FITNESS_CACHE_MISSES);
+	}
+
+	@Override
+	public void setCheckpoints(Path file, int everyGenerations) {
+		throw new UnsupportedOperationException("Checkpoints are not supported in island mode");
+	}
+
+	@Override
+	public void saveCheckpoint(Path file) {
+		throw new UnsupportedOperationException("Checkpoints are not supported in island mode");
+	}
+
+	/**
+	 * The population is divided over the islands.
+	 */
+	@Override
+	public void trainToFitness(int populationSize, double targetFitness) {
+		if (populationSize < this.islands.length)
+			throw new IllegalArgumentException("Population size (" + populationSize + ") must be at least the amount of islands (" + this.islands.length + ")");
+
+		for (EvolutionCore island : this.islands) {
+			island.getPopulationManager().initialize(populationSize / this.islands.length);
+		}
+
+		// islands can only run at the same time if the fitness calculator can be used by multiple threads
+		ExecutorService executor = this.getFitnessCalculator().isThreadSafe() ? Executors.newFixedThreadPool(this.islands.length, r -> {
+			Thread thread = new Thread(r, "Mythan island");
+			thread.setDaemon(true);
+			return thread;
+		}) : null;
+
+		try {
+			while (true) {
+				this.metrics.resetGenomeSizes();
+				Tasks.forEach(executor, this.islands.length, 1, i -> this.islands[i].getPopulationManager().newGeneration());
+				this.metrics.generationFinished(this.islands[0].getPopulationManager().getGeneration());
+
+				Genome best = null;
+				for (EvolutionCore island : this.islands) {
+					Genome latest = island.getPopulationManager().getLatestFitness();
+					if (best == null || latest.getFitness() > best.getFitness()) {
+						best = latest;
+					}
+				}
+				this.getFitnessCalculator().generationFinished(best);
+
+				int generation = this.islands[0].getPopulationManager().getGeneration();
+				if (best.getFitness() >= targetFitness) {
+					Genome solution = best;
+					double fitness = best.getFitness();
+					this.events.publish(l -> l.solutionFound(generation, solution, fitness));
+					this.events.flush();
+					return;
+				}
+
+				if (generation % (int) this.getSetting(Setting.MIGRATION_INTERVAL) == 0) {
+					this.migrate();
+				}
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * Sends the best genomes of every island to its neighbours in the topology.
+	 */
+	private void migrate() {
+		int size = (int) this.getSetting(Setting.MIGRATION_SIZE);
+
+		List<List<Genome>> emigrants = new ArrayList<>();
+		List<List<Genome>> immigrants = new ArrayList<>();
+		for (EvolutionCore island : this.islands) {
+			List<Genome> all = new ArrayList<>();
+			for (Species sp : island.getPopulationManager().getSpecies()) {
+				all.addAll(sp.getMembers());
+			}
+			Collections.sort(all, new GenomeSorter());
+
+			emigrants.add(all.subList(0, Math.min(size, all.size())));
+			immigrants.add(new ArrayList<>());
+		}
+
+		for (int from = 0; from < this.islands.length; from++) {
+			for (int to : this.getNeighbours(from)) {
+				immigrants.get(to).addAll(emigrants.get(from));
+			}
+		}
+
+		for (int i = 0; i < this.islands.length; i++) {
+			this.islands[i].getPopulationManager().immigrate(immigrants.get(i));
+		}
+	}
+
+	private int[] getNeighbours(int island) {
+		int count = this.islands.length;
+		if (count == 1)
+			return new int[0];
+
+		switch (this.topology) {
+		case RING:
+			return new int[] { (island + 1) % count };
+		case FULLY_CONNECTED:
+			int[] neighbours = new int[count - 1];
+			for (int i = 0, j = 0; i < count; i++) {
+				if (i != island) {
+					neighbours[j++] = i;
+				}
+			}
+			return neighbours;
+		default:
+			throw new AssertionError();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+import nl.sandergielisse.mythan.MetricsSnapshot;
+import nl.sandergielisse.mythan.MetricsSnapshot.Counter;
+import nl.sandergielisse.mythan.MetricsSnapshot.Phase;
+
+/**
+ * Collects the timings and counters of a training run, may be used by multiple threads at once.
+ * 
+ * The time of a phase is measured with: long start = metrics.start(); ... metrics.stop(Phase.X, start);
+ */
+public class Metrics {
+
+	private final LongAdder[] current = adders(Phase.values().length);
+	private final LongAdder[] total = adders(Phase.values().length);
+	private final LongAdder[] counters = adders(Counter.values().length);
+	private volatile long[] lastGeneration = new long[Phase.values().length];
+	private volatile int generation = 0;
+
+	private final Histogram genomeSize = new Histogram();
+	private final Histogram evaluationLatency = new Histogram();
+
+	private static LongAdder[] adders(int length) {
+		LongAdder[] adders = new LongAdder[length];
+		for (int i = 0; i < length; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	public long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Adds the time since the given start to the phase.
+	 */
+	public void stop(Phase phase, long start) {
+		long time = System.nanoTime() - start;
+		this.current[phase.ordinal()].add(time);
+		this.total[phase.ordinal()].add(time);
+	}
+
+	public void increment(Counter counter) {
+		this.counters[counter.ordinal()].increment();
+	}
+
+	public long getCount(Counter counter) {
+		return this.counters[counter.ordinal()].sum();
+	}
+
+	public void recordEvaluation(long nanos) {
+		this.evaluationLatency.record(nanos);
+	}
+
+	/**
+	 * Forgets the genome sizes of the previous generation.
+	 */
+	public void resetGenomeSizes() {
+		this.genomeSize.reset();
+	}
+
+	public void recordGenomeSize(int genes) {
+		this.genomeSize.record(genes);
+	}
+
+	/**
+	 * Stores the times of the phases of the generation which has just been created, the times of the next generation start at 0.
+	 */
+	public void generationFinished(int generation) {
+		long[] last = new long[Phase.values().length];
+		for (int i = 0; i < last.length; i++) {
+			last[i] = this.current[i].sumThenReset();
+		}
+		this.lastGeneration = last;
+		this.generation = generation;
+	}
+
+	/**
+	 * Writes the totals and counters, so a resumed run continues counting where it was. The phases and counters
+	 * are written by name, so a checkpoint can still be read after one was added or removed.
+	 * The genome sizes are not written, they are recorded again for the next generation.
+	 */
+	void write(CheckpointWriter out) throws IOException {
+		out.putInt(this.generation);
+		long[] lastGeneration = this.lastGeneration;
+
+		out.putInt(Phase.values().length);
+		for (Phase phase : Phase.values()) {
+			out.putString(phase.name());
+			out.putLong(lastGeneration[phase.ordinal()]);
+			out.putLong(this.total[phase.ordinal()].sum());
+		}
+
+		out.putInt(Counter.values().length);
+		for (Counter counter : Counter.values()) {
+			out.putString(counter.name());
+			out.putLong(this.counters[counter.ordinal()].sum());
+		}
+		this.evaluationLatency.write(out);
+	}
+
+	/**
+	 * Replaces the totals and counters by the values written by write().
+	 */
+	void read(CheckpointReader in) throws IOException {
+		this.generation = in.getInt();
+		long[] lastGeneration = new long[Phase.values().length];
+
+		int phases = in.getInt();
+		for (int i = 0; i < phases; i++) {
+			String name = in.getString();
+			long last = in.getLong();
+			long total = in.getLong();
+			try {
+				int phase = Phase.valueOf(name).ordinal();
+				lastGeneration[phase] = last;
+				this.total[phase].reset();
+				this.total[phase].add(total);
+			} catch (IllegalArgumentException e) {
+				// the phase has been removed since the checkpoint was written
+			}
+		}
+		this.lastGeneration = lastGeneration;
+
+		int counters = in.getInt();
+		for (int i = 0; i < counters; i++) {
+			String name = in.getString();
+			long value = in.getLong();
+			try {
+				int counter = Counter.valueOf(name).ordinal();
+				this.counters[counter].reset();
+				this.counters[counter].add(value);
+			} catch (IllegalArgumentException e) {
+				// the counter has been removed since the checkpoint was written
+			}
+		}
+		this.evaluationLatency.read(in);
+	}
+
+	public MetricsSnapshot snapshot() {
+		long[] total = new long[this.total.length];
+		for (int i = 0; i < total.length; i++) {
+			total[i] = this.total[i].sum();
+		}
+		long[] counters = new long[this.counters.length];
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = this.counters[i].sum();
+		}
+		return new MetricsSnapshot(this.generation, this.lastGeneration.clone(), total, counters, this.genomeSize.snapshot(), this.evaluationLatency.snapshot());
+	}
+}
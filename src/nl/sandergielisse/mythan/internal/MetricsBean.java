@@ -0,0 +1,91 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.sandergielisse.mythan.MetricsMXBean;
+import nl.sandergielisse.mythan.MetricsSnapshot;
+import nl.sandergielisse.mythan.MetricsSnapshot.Counter;
+import nl.sandergielisse.mythan.MetricsSnapshot.Phase;
+
+/**
+ * Takes a new snapshot of the metrics for every attribute which is read.
+ */
+class MetricsBean implements MetricsMXBean {
+
+	private final Metrics metrics;
+
+	MetricsBean(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public int getGeneration() {
+		return this.metrics.snapshot().getGeneration();
+	}
+
+	@Override
+	public Map<String, Double> getLastGenerationMillis() {
+		MetricsSnapshot snapshot = this.metrics.snapshot();
+		Map<String, Double> times = new LinkedHashMap<>();
+		for (Phase phase : Phase.values()) {
+			times.put(phase.name(), snapshot.getLastGenerationTime(phase) / 1e6);
+		}
+		return times;
+	}
+
+	@Override
+	public Map<String, Double> getTotalMillis() {
+		MetricsSnapshot snapshot = this.metrics.snapshot();
+		Map<String, Double> times = new LinkedHashMap<>();
+		for (Phase phase : Phase.values()) {
+			times.put(phase.name(), snapshot.getTotalTime(phase) / 1e6);
+		}
+		return times;
+	}
+
+	@Override
+	public Map<String, Long> getCounters() {
+		MetricsSnapshot snapshot = this.metrics.snapshot();
+		Map<String, Long> counters = new LinkedHashMap<>();
+		for (Counter counter : Counter.values()) {
+			counters.put(counter.name(), snapshot.getCount(counter));
+		}
+		return counters;
+	}
+
+	@Override
+	public double getGenomeSizeMean() {
+		return this.metrics.snapshot().getGenomeSize().getMean();
+	}
+
+	@Override
+	public long getGenomeSizeMax() {
+		return this.metrics.snapshot().getGenomeSize().getMax();
+	}
+
+	@Override
+	public double getEvaluationLatencyMeanMillis() {
+		return this.metrics.snapshot().getEvaluationLatency().getMean() / 1e6;
+	}
+
+	@Override
+	public double getEvaluationLatencyP99Millis() {
+		return this.metrics.snapshot().getEvaluationLatency().getPercentile(99) / 1e6;
+	}
+}
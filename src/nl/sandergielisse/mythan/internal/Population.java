@@ -16,7 +16,9 @@
 package nl.sandergielisse.mythan.internal;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import nl.sandergielisse.mythan.internal.genes.Genome;
 
@@ -24,6 +26,12 @@ public class Population {
 
 	private final EvolutionCore core;
 	private final List<Species> species = new ArrayList<>();
+	private final List<Genome> queued = new ArrayList<>();
+
+	/**
+	 * Genomes of the current generation by the hash of their structure, see Genome.getStructureHash().
+	 */
+	private final Map<Long, List<Genome>> structures = new HashMap<>();
 
 	public Population(EvolutionCore core) {
 		this.core = core;
@@ -40,6 +48,58 @@ public class Population {
 	public void addGenome(Genome genome) {
 		Species species = this.classify(genome);
 		species.getMembers().add(genome);
+		this.indexStructure(genome);
+	}
+
+	/**
+	 * Adds the genome to the given species without classifying it.
+	 */
+	public void addGenome(Species species, Genome genome) {
+		species.getMembers().add(genome);
+		this.indexStructure(genome);
+	}
+
+	private void indexStructure(Genome genome) {
+		List<Genome> list = this.structures.get(genome.getStructureHash());
+		if (list == null) {
+			this.structures.put(genome.getStructureHash(), list = new ArrayList<>(1));
+		}
+		list.add(genome);
+	}
+
+	/**
+	 * Returns the first genome added to this generation which has exactly the same connections
+	 * in the same order as the given genome, or null if there is no such genome.
+	 */
+	public Genome findStructure(Genome genome) {
+		List<Genome> list = this.structures.get(genome.getStructureHash());
+		if (list != null) {
+			for (Genome existing : list) {
+				if (existing != genome && existing.hasSameStructure(genome)) {
+					return existing;
+				}
+			}
+		}
+		return null;
+	}
+
+	public void clearStructureIndex() {
+		this.structures.clear();
+	}
+
+	/**
+	 * Indexes all current members and queued genomes again, needed after members were added or removed directly.
+	 */
+	public void rebuildStructureIndex() {
+		this.structures.clear();
+		for (Species sp : this.species) {
+			for (Genome genome : sp.getMembers()) {
+				this.indexStructure(genome);
+			}
+		}
+		for (Genome genome : this.queued) {
+			this.indexStructure(genome);
+		}
 	}
 
 	/**
@@ -55,10 +115,81 @@ public class Population {
 
 		Species ge = new Species(genome);
 		this.getSpecies().add(ge);
+		this.speciesCreated(ge);
 
 		return ge;
 	}
 
+	/**
+	 * The genome will be added to the population by the next call of classifyQueued().
+	 */
+	public void queueGenome(Genome genome) {
+		this.queued.add(genome);
+		this.indexStructure(genome);
+	}
+
+	/**
+	 * Please note that the returned list is read-only.
+	 */
+	public List<Genome> getQueuedGenomes() {
+		return queued;
+	}
+
+	/**
+	 * Adds all queued genomes to the population, which gives the same result as calling addGenome() for each of them.
+	 * 
+	 * The representatives of the existing species don't change while classifying, so every genome is compared
+	 * to the existing species in parallel first. Genomes which don't fit in any of them are compared to the
+	 * species created by the genomes before them, which is done in order.
+	 */
+	public void classifyQueued() {
+		List<Species> existing = new ArrayList<>(this.species);
+		int[] matches = new int[this.queued.size()];
+
+		Tasks.forEach(this.core.getExecutor(), this.queued.size(), 16, i -> {
+			Genome genome = this.queued.get(i);
+			matches[i] = -1;
+			for (int s = 0; s < existing.size(); s++) {
+				if (existing.get(s).isCompatible(genome)) {
+					matches[i] = s;
+					break;
+				}
+			}
+		});
+
+		for (int i = 0; i < this.queued.size(); i++) {
+			Genome genome = this.queued.get(i);
+			Species match = null;
+
+			if (matches[i] != -1) {
+				match = existing.get(matches[i]);
+			} else {
+				for (int s = existing.size(); s < this.species.size(); s++) {
+					if (this.species.get(s).isCompatible(genome)) {
+						match = this.species.get(s);
+						break;
+					}
+				}
+			}
+
+			if (match != null) {
+				genome.setSpecies(match);
+			} else {
+				match = new Species(genome);
+				this.species.add(match);
+				this.speciesCreated(match);
+			}
+			match.getMembers().add(genome);
+		}
+		this.queued.clear();
+	}
+
+	private void speciesCreated(Species species) {
+		int generation = this.core.getPopulationManager().getGeneration();
+		int id = species.getId();
+		this.core.getEvents().publish(l -> l.speciesCreated(generation, id));
+	}
+
 	/**
 	 * Returns the best performing genome of the current population.
 	 */
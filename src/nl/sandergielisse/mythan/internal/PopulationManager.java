@@ -15,16 +15,21 @@
  */
 package nl.sandergielisse.mythan.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
+import nl.sandergielisse.mythan.EvolutionListener.ExtinctionReason;
+import nl.sandergielisse.mythan.GenerationEvent;
+import nl.sandergielisse.mythan.MetricsSnapshot.Phase;
 import nl.sandergielisse.mythan.Setting;
 import nl.sandergielisse.mythan.internal.genes.Gene;
 import nl.sandergielisse.mythan.internal.genes.Genome;
+import nl.sandergielisse.mythan.internal.genes.Genome.GenomeSorter;
+import nl.sandergielisse.mythan.internal.remote.RemoteEvaluator;
 
 public class PopulationManager {
 
@@ -33,6 +38,7 @@ public class PopulationManager {
 	private final Population currentPopulation;
 	private int populationSize = 500;
 	private Genome latestFitness;
+	private double championFitness = Double.NEGATIVE_INFINITY;
 
 	public PopulationManager(EvolutionCore evolutionCore) {
 		this.evolutionCore = evolutionCore;
@@ -59,10 +65,42 @@ public class PopulationManager {
 		return latestFitness;
 	}
 
+	/**
+	 * Calculates the fitness of every genome which hasn't been evaluated yet, on the remote workers or using the fitness executor of the core.
+	 */
+	public void evaluate() {
+		List<Genome> unevaluated = new ArrayList<>();
+		for (Species sp : this.getSpecies()) {
+			for (Genome genome : sp.getMembers()) {
+				if (!genome.isEvaluated()) {
+					unevaluated.add(genome);
+				}
+			}
+		}
+
+		Metrics metrics = this.getCore().getMetricsRegistry();
+		long start = metrics.start();
+
+		RemoteEvaluator remote = this.getCore().getRemoteEvaluator();
+		if (remote != null) {
+			remote.evaluate(unevaluated);
+		} else {
+			Tasks.forEach(this.getCore().getFitnessExecutor(), unevaluated.size(), 1, i -> unevaluated.get(i).getFitness());
+		}
+		metrics.stop(Phase.EVALUATION, start);
+	}
+
 	public void newGeneration() {
 		this.currentGeneration++;
+		Metrics metrics = this.getCore().getMetricsRegistry();
+		EventBus events = this.getCore().getEvents();
+		int generation = this.currentGeneration;
+		this.getCore().getInnovationRegistry().nextGeneration();
 
-		// start with calling getBestPerforming() for every species so that calculateFitness() is executed
+		// calculate the fitness of every genome first, getBestPerforming() sorts by fitness
+		this.evaluate();
+
+		long eliminationStart = metrics.start();
 		Map<Species, List<Genome>> bestPerforming = new HashMap<>();
 		for (Species sp : this.getSpecies()) {
 			bestPerforming.put(sp, sp.getBestPerforming());
@@ -100,7 +138,7 @@ public class PopulationManager {
 			sp.setFailedGenerations(sp.getFailedGenerations() + 1);
 
 			if (sp.getFailedGenerations() > 15) {
-				System.out.println("Species was removed, because it failed for 15 generations.");
+				events.publish(l -> l.speciesExtinct(generation, sp.getId(), ExtinctionReason.STAGNATED));
 				it.remove();
 				continue;
 			}
@@ -113,7 +151,7 @@ public class PopulationManager {
 			double breedsAllowed = Math.floor(sp.getAverageFitness() / sum * totalSize) - 1.0;
 
 			if (breedsAllowed < 1) {
-				// System.out.println("Species was removed, breeds allowed < 1.");
+				events.publish(l -> l.speciesExtinct(generation, sp.getId(), ExtinctionReason.NO_OFFSPRING));
 				it.remove();
 				continue;
 			}
@@ -130,24 +168,31 @@ public class PopulationManager {
 			for (Species sp : this.getSpecies()) {
 				size += sp.getMembers().size();
 			}
-			System.out.println("Building generation " + this.currentGeneration + "... Now " + this.getSpecies().size() + " species active (with a total size of " + size + ").");
+			int species = this.getSpecies().size();
+			int members = size;
+			events.publish(l -> l.generationStarted(generation, species, members));
 		}
 
 		if (this.getSpecies().isEmpty()) {
 			throw new RuntimeException("All species died");
 		}
+		metrics.stop(Phase.ELIMINATION, eliminationStart);
 
+		long reproductionStart = metrics.start();
 		int populationSize = 0;
 
-		Map<Species, Set<Genome>> oldMembers = new HashMap<>();
+		// the structures of the old generation should not be used to fix duplicates in the new generation
+		this.currentPopulation.clearStructureIndex();
+
+		Map<Species, List<Genome>> oldMembers = new HashMap<>();
 		for (Species sp : this.getSpecies()) {
-			oldMembers.put(sp, new HashSet<>(sp.getMembers()));
+			oldMembers.put(sp, sp.getMembers().snapshot());
 
 			sp.getMembers().clear();
 
 			Genome vip = vips.get(sp);
 			if (vip != null) {
-				sp.getMembers().add(vip);
+				this.currentPopulation.addGenome(sp, vip);
 				populationSize++;
 			}
 		}
@@ -156,30 +201,38 @@ public class PopulationManager {
 		 * Fill the population with new children.
 		 */
 		while (populationSize < this.populationSize) {
-			Species randomSpecies = Random.random(this.getSpecies());
-			Set<Genome> oldMems = oldMembers.get(randomSpecies);
+			Species randomSpecies = this.getCore().getRandom().random(this.getSpecies());
+			List<Genome> oldMems = oldMembers.get(randomSpecies);
 
 			if (oldMems != null) {
-				if (Random.success(this.getCore().getSetting(Setting.BREED_CROSS_CHANCE))) {
+				if (this.getCore().getRandom().success(this.getCore().getSetting(Setting.BREED_CROSS_CHANCE))) {
 					// cross
-					Genome father = Random.random(oldMems);
-					Genome mother = Random.random(oldMems);
+					Genome father = this.getCore().getRandom().random(oldMems);
+					Genome mother = this.getCore().getRandom().random(oldMems);
 
-					Genome.crossAndAdd(father, mother);
+					long crossoverStart = metrics.start();
+					this.currentPopulation.queueGenome(Genome.cross(father, mother));
+					metrics.stop(Phase.CROSSOVER, crossoverStart);
 				} else {
 					// don't cross just copy
-					Genome g = Random.random(oldMems).clone();
+					Genome g = this.getCore().getRandom().random(oldMems).clone();
 					g.mutate();
-					randomSpecies.getMembers().add(g);
+					this.currentPopulation.addGenome(randomSpecies, g);
 				}
 				populationSize++;
 			}
 		}
 
+		metrics.stop(Phase.REPRODUCTION, reproductionStart);
+
+		long speciationStart = metrics.start();
+		this.currentPopulation.classifyQueued();
+
 		Iterator<Species> its = this.getSpecies().iterator();
 		while (its.hasNext()) {
 			Species sp = its.next();
 			if (sp.getMembers().isEmpty()) {
+				events.publish(l -> l.speciesExtinct(generation, sp.getId(), ExtinctionReason.EMPTY));
 				its.remove();
 			}
 		}
@@ -187,14 +240,35 @@ public class PopulationManager {
 		for (Species sp : this.getSpecies()) {
 			sp.update();
 		}
+		metrics.stop(Phase.SPECIATION, speciationStart);
 
 		/**
 		 * Display how the new population performed.
 		 */
+		this.evaluate();
 		this.latestFitness = this.currentPopulation.getBestPerforming();
 
-		System.out.println("Best performing genome [" + this.latestFitness.getId() + "] had fitness of " + this.latestFitness.getFitness() + " and was part of species " + this.latestFitness.getSpecies().getId() + " which has " + this.latestFitness.getSpecies().getMembers().size() + " members");
-		System.out.println(this.latestFitness.toString());
+		if (!this.getCore().isIsland()) {
+			metrics.resetGenomeSizes();
+		}
+		for (Species sp : this.getSpecies()) {
+			for (Genome genome : sp.getMembers()) {
+				metrics.recordGenomeSize(genome.getGenes().size());
+			}
+		}
+		if (!this.getCore().isIsland()) {
+			metrics.generationFinished(this.currentGeneration);
+		}
+
+		Genome best = this.latestFitness;
+		double bestFitness = best.getFitness();
+		GenerationEvent event = new GenerationEvent(generation, this.getSpecies().size(), best, best.getId(), bestFitness, best.getSpecies().getId(), best.getSpecies().getMembers().size(), metrics.snapshot());
+		events.publish(l -> l.generationFinished(event));
+
+		if (bestFitness > this.championFitness) {
+			this.championFitness = bestFitness;
+			events.publish(l -> l.championChanged(generation, best, bestFitness));
+		}
 	}
 
 	public void initialize(int populationSize) {
@@ -210,11 +284,12 @@ public class PopulationManager {
 			Genome genome = init.clone();
 			for (Gene gene : genome.getGenes()) { // genes are cloned as well
 				double dist = this.getCore().getSetting(Setting.MUTATION_WEIGHT_CHANCE_RANDOM_RANGE);
-				gene.setWeight(Random.random(-dist, dist));
+				gene.setWeight(this.getCore().getRandom().random(-dist, dist));
 			}
 			// System.out.println("GENOME " + genome.toString());
-			this.getCore().getPopulationManager().getPopulation().addGenome(genome);
+			this.currentPopulation.queueGenome(genome);
 		}
+		this.currentPopulation.classifyQueued();
 	}
 
 	private Genome initial() {
@@ -230,12 +305,75 @@ public class PopulationManager {
 		Genome gen = new Genome(this.getCore(), null, inputs, outputs);
 		for (int in = 1; in <= this.getCore().getInputSize(); in++) {
 			for (int out = 1; out <= this.getCore().getOutputSize(); out++) {
-				gen.addGene(new Gene(this.getCore().getNextInnovationNumber(), in, this.getCore().getInputSize() + out, Random.random(-dist, dist), true), null, null);
+				int to = this.getCore().getInputSize() + out;
+
+				// the initial genes are numbered in order, so the initial genomes of all islands have the same innovation numbers
+				int innovationNumber = (in - 1) * this.getCore().getOutputSize() + out;
+				gen.addGene(new Gene(innovationNumber, in, to, this.getCore().getRandom().random(-dist, dist), true), null, null);
 			}
 		}
 		return gen;
 	}
 
+	/**
+	 * Replaces the worst genomes of the population by copies of the given genomes, which come from other islands.
+	 * Should be called between generations.
+	 */
+	public void immigrate(List<Genome> migrants) {
+		List<Genome> all = new ArrayList<>();
+		for (Species sp : this.getSpecies()) {
+			all.addAll(sp.getMembers());
+		}
+		Collections.sort(all, new GenomeSorter());
+
+		int replaced = Math.min(migrants.size(), all.size());
+		for (int i = 0; i < replaced; i++) {
+			Genome bad = all.get(all.size() - 1 - i);
+			bad.getSpecies().remove(bad);
+		}
+
+		EventBus events = this.getCore().getEvents();
+		int generation = this.currentGeneration;
+		Iterator<Species> it = this.getSpecies().iterator();
+		while (it.hasNext()) {
+			Species sp = it.next();
+			if (sp.getMembers().isEmpty()) {
+				events.publish(l -> l.speciesExtinct(generation, sp.getId(), ExtinctionReason.EMPTY));
+				it.remove();
+			}
+		}
+
+		for (int i = 0; i < replaced; i++) {
+			this.currentPopulation.addGenome(migrants.get(i).copyTo(this.getCore()));
+		}
+		this.evaluate();
+		this.latestFitness = this.currentPopulation.getBestPerforming();
+	}
+
+	/**
+	 * Restores the state of a checkpoint, the species and genomes should already be added to the population.
+	 */
+	void restore(int generation, int populationSize, Genome latestFitness, double championFitness) {
+		this.currentGeneration = generation;
+		this.populationSize = populationSize;
+		this.latestFitness = latestFitness;
+		this.championFitness = championFitness;
+	}
+
+	/**
+	 * Returns the highest fitness of all generations so far.
+	 */
+	double getChampionFitness() {
+		return this.championFitness;
+	}
+
+	/**
+	 * Returns true once the first generation has been created, either by initialize() or by restoring a checkpoint.
+	 */
+	public boolean isInitialized() {
+		return !this.getSpecies().isEmpty();
+	}
+
 	public int getGeneration() {
 		return this.currentGeneration;
 	}
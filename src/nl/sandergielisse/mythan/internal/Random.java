@@ -18,33 +18,102 @@ package nl.sandergielisse.mythan.internal;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * A random number generator which can be split into independent streams, using the SplitMix64
+ * algorithm of java.util.SplittableRandom. The state is only two longs, so it can be stored and restored.
+ * 
+ * Every genome has its own stream, split from the stream of the evolution core. Because streams are
+ * split on the training thread in a fixed order, a run with the same seed is reproducible regardless
+ * of the amount of threads used. A stream may not be used by multiple threads at once.
+ */
 public class Random {
 
-	private static final java.util.Random random = new java.util.Random();
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long seed;
+	private final long gamma;
+
+	public Random(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
 
-	private static java.util.Random getRandom() {
-		return random;
+	public Random(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Returns a seed based on the current time, for runs which don't need to be reproducible.
+	 */
+	public static long randomSeed() {
+		return mix64(System.currentTimeMillis()) ^ mix64(System.nanoTime());
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public long getGamma() {
+		return gamma;
+	}
+
+	/**
+	 * Returns a new stream, which is independent of this stream.
+	 */
+	public Random split() {
+		return new Random(this.nextLong(), mixGamma(this.nextSeed()));
+	}
+
+	public long nextLong() {
+		return mix64(this.nextSeed());
+	}
+
+	/**
+	 * Returns a random int X for which 0 <= X < bound.
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0)
+			throw new IllegalArgumentException("Bound (" + bound + ") must be positive");
+
+		int r = mix32(this.nextSeed());
+		int m = bound - 1;
+		if ((bound & m) == 0) {
+			// power of two
+			r &= m;
+		} else {
+			// reject values which would make the result biased
+			for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(this.nextSeed()) >>> 1)
+				;
+		}
+		return r;
+	}
+
+	/**
+	 * Returns a random double X for which 0 <= X < 1.
+	 */
+	public double nextDouble() {
+		return (this.nextLong() >>> 11) * 0x1.0p-53;
 	}
 
 	/**
 	 * Returns a random object from the given array.
 	 */
-	public static <T> T random(T[] array) {
+	public <T> T random(T[] array) {
 		if (array.length == 0)
 			throw new UnsupportedOperationException("Given array can not be empty");
 
-		return array[getRandom().nextInt(array.length)];
+		return array[this.nextInt(array.length)];
 	}
 
 	/**
 	 * Returns a random object from the given set.
 	 */
-	public static <T> T random(Set<T> set) {
+	public <T> T random(Set<T> set) {
 		if (set.size() == 0)
 			throw new UnsupportedOperationException("Given set can not be empty");
 
 		int size = set.size();
-		int item = getRandom().nextInt(size);
+		int item = this.nextInt(size);
 		int i = 0;
 		for (T t : set) {
 			if (i == item)
@@ -54,14 +123,24 @@ public class Random {
 		throw new AssertionError();
 	}
 
+	/**
+	 * Returns a random object from the given set in constant time.
+	 */
+	public <T> T random(IndexedSet<T> set) {
+		if (set.size() == 0)
+			throw new UnsupportedOperationException("Given set can not be empty");
+
+		return set.get(this.nextInt(set.size()));
+	}
+
 	/**
 	 * Returns a random object from the given list.
 	 */
-	public static <T> T random(List<T> list) {
+	public <T> T random(List<T> list) {
 		if (list.size() == 0)
 			throw new UnsupportedOperationException("Given list can not be empty");
 
-		return list.get(getRandom().nextInt(list.size()));
+		return list.get(this.nextInt(list.size()));
 	}
 
 	/**
@@ -69,16 +148,39 @@ public class Random {
 	 * 
 	 * The smaller the given chance, the more unlikely this method will return true.
 	 */
-	public static boolean success(double chance) {
-		return getRandom().nextDouble() <= chance;
+	public boolean success(double chance) {
+		return this.nextDouble() <= chance;
 	}
 
 	/**
 	 * Returns a random double between a given min and max
 	 */
-	public static double random(double min, double max) {
+	public double random(double min, double max) {
 		if (min >= max)
 			throw new IllegalArgumentException("Min (" + min + ") can not be bigger than or equal to max (" + max + ")");
-		return min + (max - min) * getRandom().nextDouble();
+		return min + (max - min) * this.nextDouble();
+	}
+
+	private long nextSeed() {
+		return this.seed += this.gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+		return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+	}
+
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
 	}
 }
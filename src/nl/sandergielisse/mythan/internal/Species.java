@@ -17,9 +17,8 @@ package nl.sandergielisse.mythan.internal;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import nl.sandergielisse.mythan.Setting;
 import nl.sandergielisse.mythan.internal.genes.Genome;
@@ -33,32 +32,66 @@ import nl.sandergielisse.mythan.internal.genes.Genome.GenomeSorter;
  */
 public class Species {
 
-	private static int speciesCount = 0;
+	private static final AtomicInteger speciesCount = new AtomicInteger();
 
-	private final int id = speciesCount++;
+	private final int id;
 	private Genome representative;
-	private final Set<Genome> members = new HashSet<>();
+	private final IndexedSet<Genome> members = new IndexedSet<>();
 	private double highestFitness = 0;
 	private int failedGenerations = 0;
 
 	public Species(Genome representative) {
+		this.id = speciesCount.getAndIncrement();
 		this.representative = representative;
 		representative.setSpecies(this);
 	}
 
+	/**
+	 * Restores a species from a checkpoint, the representative has to be set afterwards.
+	 */
+	Species(int id, double highestFitness, int failedGenerations) {
+		this.id = id;
+		this.highestFitness = highestFitness;
+		this.failedGenerations = failedGenerations;
+		skipIds(id + 1);
+	}
+
+	/**
+	 * Returns the id the next species will get.
+	 */
+	static int peekNextId() {
+		return speciesCount.get();
+	}
+
+	/**
+	 * Makes sure new species get an id of at least the given value.
+	 */
+	static void skipIds(int next) {
+		speciesCount.accumulateAndGet(next, Math::max);
+	}
+
 	public int getId() {
 		return id;
 	}
 
-	public double getHighestFitness() {
+	public synchronized double getHighestFitness() {
 		return highestFitness;
 	}
 
-	public void setHighestFitness(double highestFitness) {
+	public synchronized void setHighestFitness(double highestFitness) {
 		this.highestFitness = highestFitness;
 		this.failedGenerations = 0;
 	}
 
+	/**
+	 * Sets the highest fitness if the given fitness is higher, may be called by multiple threads at once.
+	 */
+	public synchronized void updateHighestFitness(double fitness) {
+		if (fitness > this.highestFitness) {
+			this.setHighestFitness(fitness);
+		}
+	}
+
 	public int getFailedGenerations() {
 		return failedGenerations;
 	}
@@ -76,7 +109,13 @@ public class Species {
 	}
 
 	public boolean isCompatible(Genome genome) {
-		return Genome.distance(this.representative, genome) <= genome.getCore().getSetting(Setting.SPECIES_COMPATIBILTY_DISTANCE);
+		double compatibility = genome.getCore().getSetting(Setting.SPECIES_COMPATIBILTY_DISTANCE);
+
+		// skip the full distance calculation if the genomes are too far apart anyway
+		if (Genome.minimumDistance(this.representative, genome) > compatibility)
+			return false;
+
+		return Genome.distance(this.representative, genome) <= compatibility;
 	}
 
 	public double getAverageFitness() {
@@ -106,11 +145,11 @@ public class Species {
 		this.members.remove(g);
 	}
 
-	public Set<Genome> getMembers() {
+	public IndexedSet<Genome> getMembers() {
 		return members;
 	}
 
 	public void update() {
-		this.setRepresentative(Random.random(this.getMembers()));
+		this.setRepresentative(this.representative.getCore().getRandom().random(this.getMembers()));
 	}
 }
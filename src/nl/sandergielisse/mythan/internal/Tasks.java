@@ -0,0 +1,60 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.IntConsumer;
+
+public class Tasks {
+
+	/**
+	 * Calls the task for every index from 0 up to count and waits until all of them are done.
+	 * The indices are split in batches, every batch is executed on the given executor.
+	 * If the executor is null, everything is executed on the calling thread.
+	 */
+	public static void forEach(Executor executor, int count, int batchSize, IntConsumer task) {
+		if (executor == null || count <= batchSize) {
+			for (int i = 0; i < count; i++) {
+				task.accept(i);
+			}
+			return;
+		}
+
+		CompletableFuture<?>[] batches = new CompletableFuture<?>[(count + batchSize - 1) / batchSize];
+		for (int b = 0; b < batches.length; b++) {
+			int start = b * batchSize;
+			int end = Math.min(count, start + batchSize);
+
+			batches[b] = CompletableFuture.runAsync(() -> {
+				for (int i = start; i < end; i++) {
+					task.accept(i);
+				}
+			}, executor);
+		}
+
+		try {
+			CompletableFuture.allOf(batches).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.genes;
+
+import nl.sandergielisse.mythan.ActivationFunction;
+import nl.sandergielisse.mythan.Network;
+
+/**
+ * A genome compiled into a class of its own by the NetworkCompiler.
+ * 
+ * Unlike the phenotype, the compiled network keeps no buffers, so it may be used by multiple threads at once.
+ */
+public class CompiledNetwork implements Network {
+
+	/**
+	 * Implemented by the generated class, calculates a single sample.
+	 */
+	public interface Kernel {
+
+		public void calculate(double[] input, int inputOffset, double[] output, int outputOffset, ActivationFunction function);
+
+		public void calculate(float[] input, int inputOffset, float[] output, int outputOffset, ActivationFunction function);
+	}
+
+	private final Genome genome;
+	private final Kernel kernel;
+	private final ActivationFunction function;
+	private final int inputCount;
+	private final int outputCount;
+
+	CompiledNetwork(Genome genome, Phenotype phenotype, Kernel kernel) {
+		this.genome = genome;
+		this.kernel = kernel;
+		this.function = phenotype.getFunction();
+		this.inputCount = phenotype.getInputCount();
+		this.outputCount = phenotype.getOutputCount();
+	}
+
+	public Genome getGenome() {
+		return genome;
+	}
+
+	@Override
+	public int getInputCount() {
+		return inputCount;
+	}
+
+	@Override
+	public double[] calculate(double[] input) {
+		if (input.length != this.inputCount) {
+			throw new IllegalArgumentException("Input size " + input.length + " was not equal to the specified length " + this.inputCount);
+		}
+
+		double[] output = new double[this.outputCount];
+		this.kernel.calculate(input, 0, output, 0, this.function);
+		return output;
+	}
+
+	@Override
+	public void calculate(double[][] inputs, double[][] outputs) {
+		if (inputs.length != outputs.length) {
+			throw new IllegalArgumentException("Amount of inputs " + inputs.length + " was not equal to the amount of outputs " + outputs.length);
+		}
+
+		for (int k = 0; k < inputs.length; k++) {
+			if (inputs[k].length != this.inputCount) {
+				throw new IllegalArgumentException("Input size " + inputs[k].length + " was not equal to the specified length " + this.inputCount);
+			}
+			if (outputs[k].length < this.outputCount) {
+				throw new IllegalArgumentException("Output size " + outputs[k].length + " can not hold " + this.outputCount + " outputs");
+			}
+			this.kernel.calculate(inputs[k], 0, outputs[k], 0, this.function);
+		}
+	}
+
+	@Override
+	public void calculate(double[] inputs, double[] outputs, int samples) {
+		if (inputs.length < samples * this.inputCount) {
+			throw new IllegalArgumentException("Input buffer of size " + inputs.length + " can not hold " + samples + " samples");
+		}
+		if (outputs.length < samples * this.outputCount) {
+			throw new IllegalArgumentException("Output buffer of size " + outputs.length + " can not hold " + samples + " samples");
+		}
+
+		for (int k = 0; k < samples; k++) {
+			this.kernel.calculate(inputs, k * this.inputCount, outputs, k * this.outputCount, this.function);
+		}
+	}
+
+	@Override
+	public void calculate(float[] inputs, float[] outputs, int samples) {
+		if (inputs.length < samples * this.inputCount) {
+			throw new IllegalArgumentException("Input buffer of size " + inputs.length + " can not hold " + samples + " samples");
+		}
+		if (outputs.length < samples * this.outputCount) {
+			throw new IllegalArgumentException("Output buffer of size " + outputs.length + " can not hold " + samples + " samples");
+		}
+
+		for (int k = 0; k < samples; k++) {
+			this.kernel.calculate(inputs, k * this.inputCount, outputs, k * this.outputCount, this.function);
+		}
+	}
+
+	@Override
+	public double getFitness() {
+		return this.genome.getFitness();
+	}
+}
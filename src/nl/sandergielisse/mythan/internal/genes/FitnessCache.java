@@ -0,0 +1,143 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.genes;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nl.sandergielisse.mythan.ActivationType;
+
+/**
+ * Remembers the fitness of networks, so a genome which has the same enabled connections, weights and activation
+ * types as a genome which was evaluated before doesn't have to be evaluated again. The least recently used
+ * fitness is forgotten once the cache is full.
+ * 
+ * The weights can be quantized, so networks with almost the same weights share their fitness as well.
+ * Only use this cache if the fitness calculator always returns the same fitness for the same network.
+ */
+public class FitnessCache {
+
+	private final int maxSize;
+	private final double quantization;
+	private final Map<Key, Double> fitnesses;
+
+	/**
+	 * A quantization of 0 means the weights have to match exactly.
+	 */
+	public FitnessCache(int maxSize, double quantization) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("Max size (" + maxSize + ") must be positive");
+		if (quantization < 0)
+			throw new IllegalArgumentException("Quantization (" + quantization + ") can not be negative");
+
+		this.maxSize = maxSize;
+		this.quantization = quantization;
+		this.fitnesses = new LinkedHashMap<Key, Double>(16, 0.75f, true) {
+			private static final long serialVersionUID = -2630371462128545106L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+				return this.size() > FitnessCache.this.maxSize;
+			}
+		};
+	}
+
+	public synchronized int size() {
+		return this.fitnesses.size();
+	}
+
+	/**
+	 * Returns the cached fitness of the network, or null if it has not been cached yet.
+	 */
+	synchronized Double get(Key key) {
+		return this.fitnesses.get(key);
+	}
+
+	synchronized void put(Key key, double fitness) {
+		this.fitnesses.put(key, fitness);
+	}
+
+	/**
+	 * Creates the key of the enabled connections and weights of the given genes and the activation types of the nodes.
+	 */
+	Key key(GeneStore genes, Map<Integer, ActivationType> activations) {
+		int enabled = 0;
+		for (int i = 0; i < genes.size(); i++) {
+			if (genes.isEnabled(i))
+				enabled++;
+		}
+
+		long[] connections = new long[enabled];
+		long[] weights = new long[enabled];
+		int j = 0;
+		for (int i = 0; i < genes.size(); i++) {
+			if (!genes.isEnabled(i))
+				continue;
+
+			connections[j] = ((long) genes.getFrom(i) << 32) | (genes.getTo(i) & 0xFFFFFFFFL);
+			weights[j] = this.quantize(genes.getWeight(i));
+			j++;
+		}
+		long[] types = new long[activations.size()];
+		j = 0;
+		for (Map.Entry<Integer, ActivationType> entry : activations.entrySet()) {
+			types[j++] = ((long) entry.getKey() << 32) | entry.getValue().ordinal();
+		}
+		return new Key(connections, weights, types);
+	}
+
+	private long quantize(double weight) {
+		if (this.quantization == 0)
+			return Double.doubleToLongBits(weight);
+
+		return Math.round(weight / this.quantization);
+	}
+
+	/**
+	 * The full content is compared, so different networks never share their fitness because their hashes collide.
+	 */
+	static class Key {
+
+		private final long[] connections;
+		private final long[] weights;
+		private final long[] activations;
+		private final int hash;
+
+		Key(long[] connections, long[] weights, long[] activations) {
+			this.connections = connections;
+			this.weights = weights;
+			this.activations = activations;
+			this.hash = 31 * (31 * Arrays.hashCode(connections) + Arrays.hashCode(weights)) + Arrays.hashCode(activations);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+
+			Key other = (Key) obj;
+			return this.hash == other.hash && Arrays.equals(this.connections, other.connections) && Arrays.equals(this.weights, other.weights) && Arrays.equals(this.activations, other.activations);
+		}
+	}
+}
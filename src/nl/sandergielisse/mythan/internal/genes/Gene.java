@@ -15,8 +15,15 @@
  */
 package nl.sandergielisse.mythan.internal.genes;
 
+/**
+ * A gene is either a standalone value, or a view of a gene stored in a genome.
+ * A view keeps working when the genes of the genome are moved, because it finds its gene by innovation number.
+ */
 public class Gene implements Cloneable {
 
+	private final GeneStore store;
+	private int index;
+
 	private int innovationNumber;
 	private final int from;
 	private final int to;
@@ -24,6 +31,7 @@ public class Gene implements Cloneable {
 	private boolean enabled;
 
 	public Gene(int innovationNumber, int from, int to, double weight, boolean enabled) {
+		this.store = null;
 		this.innovationNumber = innovationNumber;
 		this.from = from;
 		this.to = to;
@@ -31,11 +39,34 @@ public class Gene implements Cloneable {
 		this.enabled = enabled;
 	}
 
+	Gene(GeneStore store, int index) {
+		this.store = store;
+		this.index = index;
+		this.innovationNumber = store.getInnovationNumber(index);
+		this.from = store.getFrom(index);
+		this.to = store.getTo(index);
+	}
+
+	/**
+	 * Returns the current index of this view in the store.
+	 */
+	private int index() {
+		if (this.index >= this.store.size() || this.store.getInnovationNumber(this.index) != this.innovationNumber) {
+			this.index = this.store.indexOf(this.innovationNumber);
+			if (this.index < 0)
+				throw new IllegalStateException("Gene with innovation number " + this.innovationNumber + " is no longer part of the genome");
+		}
+		return this.index;
+	}
+
 	public int getInnovationNumber() {
 		return innovationNumber;
 	}
 
 	public void setInnovationNumber(int innovationNumber) {
+		if (this.store != null)
+			this.store.setInnovationNumber(this.index(), innovationNumber);
+
 		this.innovationNumber = innovationNumber;
 	}
 
@@ -48,28 +79,43 @@ public class Gene implements Cloneable {
 	}
 
 	public double getWeight() {
+		if (this.store != null)
+			return this.store.getWeight(this.index());
+
 		return weight;
 	}
 
 	public void setWeight(double weight) {
-		this.weight = weight;
+		if (this.store != null)
+			this.store.setWeight(this.index(), weight);
+		else
+			this.weight = weight;
 	}
 
 	public boolean isEnabled() {
+		if (this.store != null)
+			return this.store.isEnabled(this.index());
+
 		return enabled;
 	}
 
 	public void setEnabled(boolean enabled) {
-		this.enabled = enabled;
+		if (this.store != null)
+			this.store.setEnabled(this.index(), enabled);
+		else
+			this.enabled = enabled;
 	}
 
+	/**
+	 * Returns a standalone copy of this gene.
+	 */
 	@Override
 	protected Gene clone() {
-		return new Gene(innovationNumber, from, to, weight, enabled);
+		return new Gene(innovationNumber, from, to, this.getWeight(), this.isEnabled());
 	}
 
 	@Override
 	public String toString() {
-		return "Gene [innovationNumber=" + innovationNumber + ", from=" + from + ", to=" + to + ", weight=" + weight + ", enabled=" + enabled + "]";
+		return "Gene [innovationNumber=" + innovationNumber + ", from=" + from + ", to=" + to + ", weight=" + this.getWeight() + ", enabled=" + this.isEnabled() + "]";
 	}
 }
@@ -0,0 +1,289 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.genes;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Stores the genes of a genome in parallel primitive arrays, sorted by increasing innovation number.
+ * The enabled flags are stored as a bitset. Copying a store only copies a few arrays.
+ * 
+ * In single precision, the weights are stored as floats instead of doubles. Every weight is rounded to
+ * a float when it is stored, so the weights used by evolution are exactly the weights of the network.
+ * 
+ * The genes are exposed as a list of {@link Gene} views, which read from and write to the store.
+ */
+class GeneStore extends AbstractList<Gene> {
+
+	private int size = 0;
+	private int[] innovations;
+	private int[] froms;
+	private int[] tos;
+	private double[] weights; // null in single precision
+	private float[] floatWeights; // null in double precision
+	private long[] enabled;
+
+	/**
+	 * The sum of the hashes of all connections, so adding a gene only adds the hash of its connection.
+	 */
+	private long structureHash = 0;
+
+	public GeneStore(boolean singlePrecision) {
+		this(8, singlePrecision);
+	}
+
+	public GeneStore(int capacity, boolean singlePrecision) {
+		capacity = Math.max(capacity, 1);
+		this.innovations = new int[capacity];
+		this.froms = new int[capacity];
+		this.tos = new int[capacity];
+		if (singlePrecision)
+			this.floatWeights = new float[capacity];
+		else
+			this.weights = new double[capacity];
+		this.enabled = new long[(capacity + 63) >>> 6];
+	}
+
+	private GeneStore(GeneStore other) {
+		this.size = other.size;
+		this.innovations = Arrays.copyOf(other.innovations, other.innovations.length);
+		this.froms = Arrays.copyOf(other.froms, other.froms.length);
+		this.tos = Arrays.copyOf(other.tos, other.tos.length);
+		if (other.floatWeights != null)
+			this.floatWeights = Arrays.copyOf(other.floatWeights, other.floatWeights.length);
+		else
+			this.weights = Arrays.copyOf(other.weights, other.weights.length);
+		this.enabled = Arrays.copyOf(other.enabled, other.enabled.length);
+		this.structureHash = other.structureHash;
+	}
+
+	public GeneStore copy() {
+		return new GeneStore(this);
+	}
+
+	public boolean isSinglePrecision() {
+		return this.floatWeights != null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Gene get(int index) {
+		if (index < 0 || index >= this.size)
+			throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for " + this.size + " genes");
+
+		return new Gene(this, index);
+	}
+
+	/**
+	 * Returns the index of the gene with the given innovation number, or (-(insertion point) - 1) if there is no such gene.
+	 */
+	public int indexOf(int innovationNumber) {
+		int size = this.size;
+		// genes are usually added with a new highest innovation number
+		if (size > 0 && this.innovations[size - 1] == innovationNumber)
+			return size - 1;
+
+		return Arrays.binarySearch(this.innovations, 0, size, innovationNumber);
+	}
+
+	public boolean contains(int innovationNumber) {
+		return this.indexOf(innovationNumber) >= 0;
+	}
+
+	/**
+	 * Adds the gene at the right position, returns the index it was stored at.
+	 */
+	public int add(int innovationNumber, int from, int to, double weight, boolean enabled) {
+		int index = this.size;
+		if (index > 0 && this.innovations[index - 1] >= innovationNumber) {
+			index = this.indexOf(innovationNumber);
+			if (index >= 0)
+				throw new IllegalArgumentException("Store already has gene with innovation number " + innovationNumber);
+			index = -index - 1;
+		}
+
+		this.ensureCapacity(this.size + 1);
+		int moved = this.size - index;
+		if (moved > 0) {
+			System.arraycopy(this.innovations, index, this.innovations, index + 1, moved);
+			System.arraycopy(this.froms, index, this.froms, index + 1, moved);
+			System.arraycopy(this.tos, index, this.tos, index + 1, moved);
+			if (this.floatWeights != null)
+				System.arraycopy(this.floatWeights, index, this.floatWeights, index + 1, moved);
+			else
+				System.arraycopy(this.weights, index, this.weights, index + 1, moved);
+			for (int i = this.size; i > index; i--) {
+				this.setEnabled(i, this.isEnabled(i - 1));
+			}
+		}
+		this.size++;
+
+		this.innovations[index] = innovationNumber;
+		this.froms[index] = from;
+		this.tos[index] = to;
+		this.setWeight(index, weight);
+		this.setEnabled(index, enabled);
+		this.structureHash += hash(from, to);
+		this.modCount++;
+		return index;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= this.innovations.length)
+			return;
+
+		int length = Math.max(capacity, this.innovations.length * 2);
+		this.innovations = Arrays.copyOf(this.innovations, length);
+		this.froms = Arrays.copyOf(this.froms, length);
+		this.tos = Arrays.copyOf(this.tos, length);
+		if (this.floatWeights != null)
+			this.floatWeights = Arrays.copyOf(this.floatWeights, length);
+		else
+			this.weights = Arrays.copyOf(this.weights, length);
+		this.enabled = Arrays.copyOf(this.enabled, (length + 63) >>> 6);
+	}
+
+	public int getInnovationNumber(int index) {
+		return this.innovations[index];
+	}
+
+	/**
+	 * Changing an innovation number may change the position of the gene.
+	 */
+	public void setInnovationNumber(int index, int innovationNumber) {
+		if (this.innovations[index] == innovationNumber)
+			return;
+
+		int existing = this.indexOf(innovationNumber);
+		if (existing >= 0)
+			throw new IllegalArgumentException("Store already has gene with innovation number " + innovationNumber);
+
+		this.innovations[index] = innovationNumber;
+		this.sort();
+	}
+
+	public int getFrom(int index) {
+		return this.froms[index];
+	}
+
+	public int getTo(int index) {
+		return this.tos[index];
+	}
+
+	public double getWeight(int index) {
+		if (this.floatWeights != null)
+			return this.floatWeights[index];
+
+		return this.weights[index];
+	}
+
+	public void setWeight(int index, double weight) {
+		if (this.floatWeights != null)
+			this.floatWeights[index] = (float) weight;
+		else
+			this.weights[index] = weight;
+	}
+
+	public boolean isEnabled(int index) {
+		return (this.enabled[index >>> 6] & (1L << index)) != 0;
+	}
+
+	public void setEnabled(int index, boolean enabled) {
+		if (enabled)
+			this.enabled[index >>> 6] |= 1L << index;
+		else
+			this.enabled[index >>> 6] &= ~(1L << index);
+	}
+
+	public int getHighestInnovationNumber() {
+		if (this.size == 0)
+			throw new UnsupportedOperationException("Genes may not be empty");
+
+		return this.innovations[this.size - 1];
+	}
+
+	public long getStructureHash() {
+		return structureHash;
+	}
+
+	/**
+	 * Mixes the bits of the connection (the finalizer of SplitMix64), so sums of different connections rarely collide.
+	 */
+	private static long hash(int from, int to) {
+		long z = ((long) from << 32) ^ (to & 0xFFFFFFFFL);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns true if both stores contain the same connections in the same order.
+	 */
+	public boolean sameConnections(GeneStore other) {
+		if (this.size != other.size)
+			return false;
+
+		for (int i = 0; i < this.size; i++) {
+			if (this.froms[i] != other.froms[i] || this.tos[i] != other.tos[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gives every gene the innovation number of the gene at the same index of the other store.
+	 */
+	public void copyInnovationNumbers(GeneStore other) {
+		if (this.size != other.size)
+			throw new IllegalArgumentException("Stores have a different size");
+
+		System.arraycopy(other.innovations, 0, this.innovations, 0, this.size);
+		this.modCount++;
+	}
+
+	/**
+	 * Restores the order by innovation number after innovation numbers were changed.
+	 */
+	private void sort() {
+		boolean sorted = true;
+		for (int i = 1; i < this.size && sorted; i++) {
+			sorted = this.innovations[i - 1] < this.innovations[i];
+		}
+		if (sorted)
+			return;
+
+		Integer[] order = new Integer[this.size];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, (a, b) -> Integer.compare(this.innovations[a], this.innovations[b]));
+
+		GeneStore old = this.copy();
+		for (int i = 0; i < order.length; i++) {
+			int from = order[i];
+			this.innovations[i] = old.innovations[from];
+			this.froms[i] = old.froms[from];
+			this.tos[i] = old.tos[from];
+			this.setWeight(i, old.getWeight(from));
+			this.setEnabled(i, old.isEnabled(from));
+		}
+		this.modCount++;
+	}
+}
@@ -15,49 +15,61 @@
  */
 package nl.sandergielisse.mythan.internal.genes;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import nl.sandergielisse.mythan.BackTraceTask;
+import nl.sandergielisse.mythan.ActivationType;
+import nl.sandergielisse.mythan.MetricsSnapshot.Counter;
+import nl.sandergielisse.mythan.MetricsSnapshot.Phase;
 import nl.sandergielisse.mythan.Network;
 import nl.sandergielisse.mythan.Setting;
-import nl.sandergielisse.mythan.internal.ArrayUtils;
+import nl.sandergielisse.mythan.internal.CheckpointReader;
+import nl.sandergielisse.mythan.internal.CheckpointWriter;
 import nl.sandergielisse.mythan.internal.EvolutionCore;
 import nl.sandergielisse.mythan.internal.Random;
 import nl.sandergielisse.mythan.internal.Species;
 
 public class Genome implements Cloneable, Network {
 
-	private static int counter = 0;
-	private final int id = counter++;
+	private static final AtomicInteger counter = new AtomicInteger();
+	private final int id;
 
 	public int getId() {
 		return id;
 	}
 
 	/**
-	 * The TreeMap will make sure the genes are always ordered by increasing innovation number.
+	 * The store will make sure the genes are always ordered by increasing innovation number.
 	 */
-	private Map<Integer, Gene> genes = new TreeMap<>();
+	private GeneStore genes;
 	private final EvolutionCore core;
 
 	private List<Integer> inputNodes = new ArrayList<>();
 	private List<Integer> outputNodes = new ArrayList<>();
 
+	/**
+	 * The activation types of the nodes which don't use the activation function of the instance.
+	 */
+	private Map<Integer, ActivationType> activations = new TreeMap<>();
+
 	private Species species;
 
+	/**
+	 * The random stream used for the mutations of this genome.
+	 */
+	private final Random random;
+
 	public Genome(EvolutionCore core, Species member, Integer[] inputNodes, Integer[] outputNodes) {
-		this.core = core;
-		this.species = member;
+		this(core, member, counter.getAndIncrement(), core.getRandom().split());
 
 		for (int in : inputNodes)
 			this.addInputNode(in);
@@ -66,6 +78,115 @@ public class Genome implements Cloneable, Network {
 			this.addOutputNode(out);
 	}
 
+	private Genome(EvolutionCore core, Species member, int id, Random random) {
+		this.core = core;
+		this.species = member;
+		this.id = id;
+		this.random = random;
+		this.genes = new GeneStore(core.isSinglePrecision());
+	}
+
+	/**
+	 * Returns the id the next genome will get.
+	 */
+	public static int peekNextId() {
+		return counter.get();
+	}
+
+	/**
+	 * Makes sure new genomes get an id of at least the given value, used when restoring a checkpoint.
+	 */
+	public static void skipIds(int next) {
+		counter.accumulateAndGet(next, Math::max);
+	}
+
+	/**
+	 * Writes the genome to a checkpoint, including its fitness and random stream but without its species.
+	 */
+	public void write(CheckpointWriter out) throws IOException {
+		out.putInt(this.id);
+		out.putDouble(this.fitness);
+		out.putLong(this.random.getSeed());
+		out.putLong(this.random.getGamma());
+
+		out.putInt(this.inputNodes.size());
+		for (int in : this.inputNodes)
+			out.putInt(in);
+
+		out.putInt(this.outputNodes.size());
+		for (int output : this.outputNodes)
+			out.putInt(output);
+
+		out.putInt(this.genes.size());
+		for (int i = 0; i < this.genes.size(); i++) {
+			out.putInt(this.genes.getInnovationNumber(i));
+			out.putInt(this.genes.getFrom(i));
+			out.putInt(this.genes.getTo(i));
+			out.putDouble(this.genes.getWeight(i));
+			out.putBoolean(this.genes.isEnabled(i));
+		}
+
+		out.putInt(this.activations.size());
+		for (Map.Entry<Integer, ActivationType> entry : this.activations.entrySet()) {
+			out.putInt(entry.getKey());
+			out.putInt(entry.getValue().ordinal());
+		}
+	}
+
+	/**
+	 * Copies the genes into a new genome of the given core, used to move genomes between islands.
+	 * The copy doesn't have a species and its fitness still has to be calculated.
+	 */
+	public Genome copyTo(EvolutionCore core) {
+		Genome copy = new Genome(core, null, this.getInputs(), this.getOutputs());
+		copy.genes = this.genes.copy();
+		copy.activations = new TreeMap<>(this.activations);
+		return copy;
+	}
+
+	/**
+	 * Reads a genome written by write(), which becomes part of the given species.
+	 */
+	public static Genome read(EvolutionCore core, Species species, CheckpointReader in) throws IOException {
+		int id = in.getInt();
+		double fitness = in.getDouble();
+		long seed = in.getLong();
+		long gamma = in.getLong();
+
+		Genome genome = new Genome(core, species, id, new Random(seed, gamma));
+		skipIds(id + 1);
+
+		int inputs = in.getInt();
+		for (int i = 0; i < inputs; i++)
+			genome.addInputNode(in.getInt());
+
+		int outputs = in.getInt();
+		for (int i = 0; i < outputs; i++)
+			genome.addOutputNode(in.getInt());
+
+		int size = in.getInt();
+		GeneStore genes = new GeneStore(size, core.isSinglePrecision());
+		for (int i = 0; i < size; i++) {
+			genes.add(in.getInt(), in.getInt(), in.getInt(), in.getDouble(), in.getBoolean());
+		}
+		genome.genes = genes;
+
+		int activations = in.getInt();
+		for (int i = 0; i < activations; i++) {
+			int node = in.getInt();
+			int type = in.getInt();
+			if (type < 0 || type >= ActivationType.values().length)
+				throw new IOException("Invalid activation type " + type);
+			genome.activations.put(node, ActivationType.values()[type]);
+		}
+		genome.fitness = fitness;
+		return genome;
+	}
+
+	public Random getRandom() {
+		return random;
+	}
+
 	public void setSpecies(Species sp) {
 		if (this.fitness != -1)
 			throw new UnsupportedOperationException("setSpecies() must be called before getFitness()");
@@ -174,6 +295,33 @@ public class Genome implements Cloneable, Network {
 		return this.outputNodes.contains(node);
 	}
 
+	/**
+	 * Returns null if the node uses the activation function of the instance.
+	 */
+	public ActivationType getActivation(int node) {
+		return this.activations.get(node);
+	}
+
+	/**
+	 * When null is given, the node uses the activation function of the instance.
+	 */
+	public void setActivation(int node, ActivationType type) {
+		if (this.fitness != -1)
+			throw new UnsupportedOperationException("setActivation() must be called before getFitness()");
+
+		if (type == null)
+			this.activations.remove(node);
+		else
+			this.activations.put(node, type);
+	}
+
+	/**
+	 * Please note that the returned map is read-only, nodes which are not in it use the activation function of the instance.
+	 */
+	public Map<Integer, ActivationType> getActivations() {
+		return Collections.unmodifiableMap(this.activations);
+	}
+
 	public EvolutionCore getCore() {
 		return core;
 	}
@@ -183,57 +331,96 @@ public class Genome implements Cloneable, Network {
 		if (this.fitness != -1)
 			throw new UnsupportedOperationException("addGene() must be called before getFitness()");
 
-		if (this.genes.containsKey(gene.getInnovationNumber())) {
+		int innovationNumber = gene.getInnovationNumber();
+		if (this.genes.contains(innovationNumber)) {
 			System.out.println(this.toString());
-			throw new UnsupportedOperationException("Genome already has gene with innovation number " + gene.getInnovationNumber());
+			throw new UnsupportedOperationException("Genome already has gene with innovation number " + innovationNumber);
 		}
 
-		gene = gene.clone(); // make sure we're working with a cloned instance
+		boolean enabled = gene.isEnabled();
 		if (parent1 != null && parent2 != null) {
-			if (parent1.hasGene(gene.getInnovationNumber()) && parent2.hasGene(gene.getInnovationNumber())) {
+			int index1 = parent1.genes.indexOf(innovationNumber);
+			int index2 = parent2.genes.indexOf(innovationNumber);
+			if (index1 >= 0 && index2 >= 0) {
 				/**
 				 * There is a chance that a gene which is disabled in one of the parents is disabled.
 				 */
-				boolean dis1 = !parent1.getGene(gene.getInnovationNumber()).isEnabled();
-				boolean dis2 = !parent2.getGene(gene.getInnovationNumber()).isEnabled();
+				boolean dis1 = !parent1.genes.isEnabled(index1);
+				boolean dis2 = !parent2.genes.isEnabled(index2);
 
 				// only one of them is disabled
 				if ((dis1 && !dis2) || (!dis1 && dis2)) {
-					boolean disabled = Random.success(this.getCore().getSetting(Setting.GENE_DISABLE_CHANCE));
-					gene.setEnabled(!disabled);
+					boolean disabled = this.random.success(this.getCore().getSetting(Setting.GENE_DISABLE_CHANCE));
+					enabled = !disabled;
 				}
 			}
 		}
 
-		this.genes.put(gene.getInnovationNumber(), gene); // clone it so we are sure we have a new instance
-	}
+		// the values are copied into the store, so later changes to the given gene don't affect this genome
+		this.genes.add(innovationNumber, gene.getFrom(), gene.getTo(), gene.getWeight(), enabled);
 
-	public Collection<Gene> getGenes() {
-		return genes.values();
+		if (this.topologicalOrder != null || this.inheritedOrder != null) {
+			this.getTopologicalOrder().addConnection(gene.getFrom(), gene.getTo());
+		}
 	}
 
-	public int getHighestInnovationNumber() {
-		if (this.genes.isEmpty()) {
-			throw new UnsupportedOperationException("Genes may not be empty");
+	/**
+	 * Built the first time a mutation needs it and kept up to date while genes are added.
+	 */
+	private TopologicalOrder topologicalOrder;
+
+	/**
+	 * The order of a genome with the same connections which can't change anymore, like the original of a clone or the
+	 * dominant parent of a crossover. It is copied instead of sorting the connections again once the order is needed.
+	 */
+	private TopologicalOrder inheritedOrder;
+
+	TopologicalOrder getTopologicalOrder() {
+		if (this.topologicalOrder == null) {
+			this.topologicalOrder = this.inheritedOrder != null ? this.inheritedOrder.copy() : new TopologicalOrder(this);
+			this.inheritedOrder = null;
 		}
-		Iterator<Gene> it = this.genes.values().iterator();
-		Gene last = null;
-		while (it.hasNext()) {
-			last = it.next();
+		return this.topologicalOrder;
+	}
+
+	/**
+	 * Lets this genome start from the order of the given genome, which must have the same connections.
+	 */
+	private void inheritOrder(Genome original) {
+		if (original.topologicalOrder != null && !original.isEvaluated()) {
+			// the original may still get new genes
+			this.topologicalOrder = original.topologicalOrder.copy();
+		} else {
+			this.inheritedOrder = original.topologicalOrder != null ? original.topologicalOrder : original.inheritedOrder;
 		}
-		// can't be null otherwise UnsupportedOperationException has already been thrown
-		if (last == null)
-			throw new AssertionError();
+	}
+
+	/**
+	 * Returns views of the genes, ordered by increasing innovation number.
+	 * Changing the weight or enabled state of a view changes the gene in this genome.
+	 */
+	public Collection<Gene> getGenes() {
+		return genes;
+	}
 
-		return last.getInnovationNumber();
+	GeneStore getGeneStore() {
+		return genes;
 	}
 
-	private boolean hasGene(int innovationNumber) {
-		return this.genes.containsKey(innovationNumber);
+	public int getHighestInnovationNumber() {
+		return this.genes.getHighestInnovationNumber();
+	}
+
+	boolean hasGene(int innovationNumber) {
+		return this.genes.contains(innovationNumber);
 	}
 
 	private Gene getGene(int innovationNumber) {
-		return this.genes.get(innovationNumber);
+		int index = this.genes.indexOf(innovationNumber);
+		if (index < 0)
+			return null;
+
+		return this.genes.get(index);
 	}
 
 	/**
@@ -268,14 +455,13 @@ public class Genome implements Cloneable, Network {
 	public Genome clone() {
 		Genome newGenome = new Genome(this.core, this.getSpecies(), this.getInputs(), this.getOutputs());
 
-		// clone the values of the genes map
-		newGenome.genes = new TreeMap<>();
-		for (Entry<Integer, Gene> s : this.genes.entrySet()) {
-			newGenome.genes.put(s.getKey(), s.getValue().clone());
-		}
+		// copy the arrays of the gene store
+		newGenome.genes = this.genes.copy();
 
 		newGenome.inputNodes = new ArrayList<>(this.inputNodes);
 		newGenome.outputNodes = new ArrayList<>(this.outputNodes);
+		newGenome.activations = new TreeMap<>(this.activations);
+		newGenome.inheritOrder(this);
 		return newGenome;
 	}
 
@@ -288,38 +474,39 @@ public class Genome implements Cloneable, Network {
 		if (this.fitness != -1)
 			throw new UnsupportedOperationException("fixDuplicates() must be called before getFitness()");
 
-		for (Species sp : this.getCore().getPopulationManager().getPopulation().getSpecies()) {
-			for (Genome genome : sp.getMembers()) {
-				List<Connection> conA = this.getAllConnections();
-				List<Connection> conB = genome.getAllConnections();
-
-				if (ArrayUtils.equals(conB, conA)) {
-					Iterator<Gene> toCloneFrom = new ArrayList<>(genome.genes.values()).iterator();
-					Iterator<Gene> toReplace = new ArrayList<>(this.genes.values()).iterator();
-
-					while (toCloneFrom.hasNext() && toReplace.hasNext()) {
-						Gene from = toCloneFrom.next();
-						Gene to = toReplace.next();
-
-						int oldInno = to.getInnovationNumber();
-						int changeTo = from.getInnovationNumber();
-
-						Gene old = this.genes.remove(oldInno);
-						old.setInnovationNumber(changeTo);
-						this.genes.put(old.getInnovationNumber(), old);
-					}
-					if (toCloneFrom.hasNext() || toReplace.hasNext())
-						throw new AssertionError();
-					return;
-				}
-			}
+		Genome existing = this.getCore().getPopulationManager().getPopulation().findStructure(this);
+		if (existing != null) {
+			this.genes.copyInnovationNumbers(existing.genes);
 		}
 	}
 
+	/**
+	 * Returns a hash of the connections of this genome, which is kept up to date while genes are added.
+	 * Genomes with the same connections have the same hash, regardless of innovation numbers and weights.
+	 */
+	public long getStructureHash() {
+		return this.genes.getStructureHash();
+	}
+
+	/**
+	 * Returns true if both genomes have exactly the same connections in the same order.
+	 */
+	public boolean hasSameStructure(Genome other) {
+		return this.genes.getStructureHash() == other.genes.getStructureHash() && this.genes.sameConnections(other.genes);
+	}
+
 	/**
 	 * Make sure calculateFitness() has been called already.
 	 */
 	public static void crossAndAdd(Genome a, Genome b) {
+		a.getCore().getPopulationManager().getPopulation().queueGenome(cross(a, b));
+	}
+
+	/**
+	 * Returns the child of both genomes, the strongest genome is dominant.
+	 * Make sure calculateFitness() has been called already.
+	 */
+	public static Genome cross(Genome a, Genome b) {
 
 		if (!a.getSpecies().equals(b.getSpecies()))
 			throw new UnsupportedOperationException("Species must match when crossing");
@@ -336,8 +523,7 @@ public class Genome implements Cloneable, Network {
 			strongest = b;
 			weakest = a;
 		}
-		Genome child = crossDominant(strongest, weakest);
-		a.getCore().getPopulationManager().getPopulation().addGenome(child);
+		return crossDominant(strongest, weakest);
 	}
 
 	/**
@@ -350,32 +536,59 @@ public class Genome implements Cloneable, Network {
 		if (dominant.getGenes().isEmpty() || other.getGenes().isEmpty())
 			throw new UnsupportedOperationException("Genes may not be empty");
 
-		// find out how far they match
-		int sharedLength = -1;
-		for (int i = 1;; i++) {
-			if (i > 100000)
-				throw new RuntimeException();
+		Genome newGenome = new Genome(dominant.getCore(), null, dominant.getInputs(), dominant.getOutputs()); // inputs/outputs should match so it doesn't matter where we get it from
 
-			if (dominant.hasGene(i) && other.hasGene(i)) {
-				sharedLength = i;
-			} else {
-				break;
+		/**
+		 * Both parents are sorted by innovation number, so walk through them at the same time.
+		 * The child gets every gene of the dominant parent, in the same order.
+		 */
+		GeneStore dominantGenes = dominant.genes;
+		GeneStore otherGenes = other.genes;
+		GeneStore childGenes = new GeneStore(dominantGenes.size(), dominantGenes.isSinglePrecision());
+		double disableChance = dominant.getCore().getSetting(Setting.GENE_DISABLE_CHANCE);
+		boolean sameConnections = true;
+
+		int o = 0;
+		for (int d = 0; d < dominantGenes.size(); d++) {
+			int innovationNumber = dominantGenes.getInnovationNumber(d);
+			while (o < otherGenes.size() && otherGenes.getInnovationNumber(o) < innovationNumber) {
+				o++;
 			}
-		}
-		if (sharedLength == -1)
-			throw new AssertionError();
 
-		Genome newGenome = new Genome(dominant.getCore(), null, dominant.getInputs(), dominant.getOutputs()); // inputs/outputs should match so it doesn't matter where we get it from
-		for (int i = 1; i <= dominant.getHighestInnovationNumber(); i++) {
-			if (dominant.hasGene(i)) {
+			if (o < otherGenes.size() && otherGenes.getInnovationNumber(o) == innovationNumber) {
 				// the following should also be random if both parents have the gene
-				if (other.hasGene(i)) {
-					newGenome.addGene(Random.random(new Gene[] { dominant.getGene(i), other.getGene(i) }), dominant, other);
-				} else {
-					newGenome.addGene(dominant.getGene(i), dominant, other);
+				GeneStore parent = newGenome.random.success(0.5) ? dominantGenes : otherGenes;
+				int index = parent == dominantGenes ? d : o;
+				boolean enabled = parent.isEnabled(index);
+
+				/**
+				 * There is a chance that a gene which is disabled in one of the parents is disabled.
+				 */
+				boolean dis1 = !dominantGenes.isEnabled(d);
+				boolean dis2 = !otherGenes.isEnabled(o);
+
+				// only one of them is disabled
+				if ((dis1 && !dis2) || (!dis1 && dis2)) {
+					boolean disabled = newGenome.random.success(disableChance);
+					enabled = !disabled;
 				}
+
+				if (parent.getFrom(index) != dominantGenes.getFrom(d) || parent.getTo(index) != dominantGenes.getTo(d))
+					sameConnections = false;
+
+				childGenes.add(innovationNumber, parent.getFrom(index), parent.getTo(index), parent.getWeight(index), enabled);
+			} else {
+				childGenes.add(innovationNumber, dominantGenes.getFrom(d), dominantGenes.getTo(d), dominantGenes.getWeight(d), dominantGenes.isEnabled(d));
 			}
 		}
+		newGenome.genes = childGenes;
+
+		// the child has the nodes of the dominant parent, which also decides their activation types
+		newGenome.activations = new TreeMap<>(dominant.activations);
+
+		// the child usually has the connections of the dominant parent, so it starts from the order of that parent
+		if (sameConnections)
+			newGenome.inheritOrder(dominant);
 
 		// make sure there are no duplicates
 		newGenome.fixDuplicates();
@@ -387,15 +600,58 @@ public class Genome implements Cloneable, Network {
 	}
 
 	public void mutate() {
+		long start = this.core.getMetricsRegistry().start();
 		Mutation mutation = new Mutation(this);
 		mutation.mutate();
+		this.core.getMetricsRegistry().stop(Phase.MUTATION, start);
+	}
+
+	/**
+	 * Returns a lower bound of distance(a, b), using only the gene counts and the amount of excess genes.
+	 * The number of genes which are not matching is at least the difference in gene count.
+	 */
+	public static double minimumDistance(Genome a, Genome b) {
+		double c1 = a.getCore().getSetting(Setting.DISTANCE_EXCESS_WEIGHT);
+		double c2 = a.getCore().getSetting(Setting.DISTANCE_DISJOINT_WEIGHT);
+		double c3 = a.getCore().getSetting(Setting.DISTANCE_WEIGHTS_WEIGHT);
+
+		double c4 = a.getCore().getSetting(Setting.DISTANCE_ACTIVATION_WEIGHT);
+
+		if (c1 < 0 || c2 < 0 || c3 < 0 || c4 < 0)
+			return Double.NEGATIVE_INFINITY; // a term could lower the distance, so there is no bound
+
+		Genome longest;
+		Genome shortest;
+
+		if (a.getHighestInnovationNumber() > b.getHighestInnovationNumber()) {
+			longest = a;
+			shortest = b;
+		} else {
+			longest = b;
+			shortest = a;
+		}
+
+		// the genes of the longest genome after the last gene of the shortest genome are excess
+		int end = longest.genes.indexOf(shortest.getHighestInnovationNumber());
+		end = end >= 0 ? end + 1 : -end - 1;
+
+		double excess = longest.genes.size() - end;
+		double disjoint = Math.max(0, Math.abs(longest.genes.size() - shortest.genes.size()) - excess);
+		double n = longest.genes.size();
+
+		return ((c1 * excess) / n) + ((c2 * disjoint) / n);
 	}
 
 	/**
 	 * Returns the distance between two existing genomes using the following formula.
-	 * d = (c1 * E) / N + (c2 * D) / N + c3 * W
+	 * d = (c1 * E) / N + (c2 * D) / N + c3 * W + (c4 * A) / N
+	 * 
+	 * Where A is the amount of nodes with a different activation type, a node which only one of the genomes
+	 * has counts as using the activation function of the instance in the other genome.
 	 */
 	public static double distance(Genome a, Genome b) {
+		a.getCore().getMetricsRegistry().increment(Counter.DISTANCE_COMPUTATIONS);
+
 		// find the longest
 		int aLength = a.getHighestInnovationNumber();
 		int bLength = b.getHighestInnovationNumber();
@@ -412,38 +668,48 @@ public class Genome implements Cloneable, Network {
 		}
 
 		int shortestLength = shortest.getHighestInnovationNumber();
-		int longestLength = longest.getHighestInnovationNumber();
 
 		double disjoint = 0; // use double so it won't be used as an int in the formula
 		double excess = 0; // use double so it won't be used as an int in the formula
 
-		List<Double> weights = new ArrayList<>();
-		for (int i = 1; i <= longestLength; i++) {
-			Gene aa = longest.getGene(i);
-			Gene bb = shortest.getGene(i);
-
-			if ((aa == null && bb != null) || (aa != null && bb == null)) {
-				// only present in one of them
+		double total = 0;
+		double size = 0;
 
-				if (i <= shortestLength) {
-					disjoint++;
-				} else if (i > shortestLength) {
-					excess++;
-				}
-			}
-			if (aa != null && bb != null) {
+		/**
+		 * Both stores are sorted by innovation number, so walk through them at the same time.
+		 */
+		GeneStore longGenes = longest.genes;
+		GeneStore shortGenes = shortest.genes;
+		int l = 0;
+		int s = 0;
+		while (l < longGenes.size() || s < shortGenes.size()) {
+			int longInnovation = l < longGenes.size() ? longGenes.getInnovationNumber(l) : Integer.MAX_VALUE;
+			int shortInnovation = s < shortGenes.size() ? shortGenes.getInnovationNumber(s) : Integer.MAX_VALUE;
+
+			if (longInnovation == shortInnovation) {
 				// matching gene
-				double distance = Math.abs(aa.getWeight() - bb.getWeight());
-				weights.add(distance);
+				total += Math.abs(longGenes.getWeight(l) - shortGenes.getWeight(s));
+				size++;
+				l++;
+				s++;
+				continue;
 			}
-		}
 
-		double total = 0;
-		double size = 0;
+			// only present in one of them
+			int innovation;
+			if (longInnovation < shortInnovation) {
+				innovation = longInnovation;
+				l++;
+			} else {
+				innovation = shortInnovation;
+				s++;
+			}
 
-		for (double w : weights) {
-			total += w;
-			size++;
+			if (innovation <= shortestLength) {
+				disjoint++;
+			} else {
+				excess++;
+			}
 		}
 
 		double averageWeightDistance = total / size;
@@ -454,34 +720,166 @@ public class Genome implements Cloneable, Network {
 
 		// formula: d = (c1 * E) / N + (c2 * D) / N + c3 * W
 		double d = ((c1 * excess) / n) + ((c2 * disjoint) / n) + (c3 * averageWeightDistance);
+
+		double c4 = a.getCore().getSetting(Setting.DISTANCE_ACTIVATION_WEIGHT);
+		if (c4 != 0) {
+			d += (c4 * activationDifference(a, b)) / n;
+		}
 		return d;
 	}
 
+	private static int activationDifference(Genome a, Genome b) {
+		int different = 0;
+		for (Map.Entry<Integer, ActivationType> entry : a.activations.entrySet()) {
+			if (b.activations.get(entry.getKey()) != entry.getValue())
+				different++;
+		}
+		for (Integer node : b.activations.keySet()) {
+			if (!a.activations.containsKey(node))
+				different++;
+		}
+		return different;
+	}
+
 	@Override
 	public double[] calculate(double[] input) {
-		return new BackTraceTask(this, this.core.getActivationFunction(), input).calculateOutput();
+		return this.getPhenotype().calculate(input);
 	}
 
-	private double fitness = -1;
+	@Override
+	public int getInputCount() {
+		return this.getInputNodes().size();
+	}
 
-	private double calculateFitness() {
-		this.fitness = this.core.getFitnessCalculator().getFitness(this);
+	@Override
+	public void calculate(double[][] inputs, double[][] outputs) {
+		this.getPhenotype().calculate(inputs, outputs);
+	}
+
+	@Override
+	public void calculate(double[] inputs, double[] outputs, int samples) {
+		this.getPhenotype().calculate(inputs, outputs, samples);
+	}
+
+	@Override
+	public void calculate(float[] inputs, float[] outputs, int samples) {
+		this.getPhenotype().calculate(inputs, outputs, samples);
+	}
 
-		if (this.fitness > this.getSpecies().getHighestFitness()) {
-			this.getSpecies().setHighestFitness(this.fitness);
+	@Override
+	public void reset() {
+		if (this.phenotype != null)
+			this.phenotype.reset();
+	}
+
+	/**
+	 * The phenotype is compiled once the fitness is calculated, because the genome can't change after that.
+	 * Before that, a new phenotype is compiled for every call, so a recurrent genome doesn't keep its values between calls yet.
+	 * The phenotype keeps its value buffers per thread, so it may be calculated by multiple threads at once, also while
+	 * the fitness calculator is running.
+	 */
+	private volatile Phenotype phenotype;
+
+	/**
+	 * Returns the network compiled from the enabled genes.
+	 */
+	public Phenotype getPhenotype() {
+		if (this.phenotype != null)
+			return this.phenotype;
+
+		Phenotype phenotype = new Phenotype(this, this.core.getActivationFunction());
+		if (this.isEvaluated()) {
+			// the genome can't change anymore, happens when the fitness was cached
+			this.phenotype = phenotype;
 		}
+		return phenotype;
+	}
+
+	private volatile double fitness = -1;
+
+	/**
+	 * Synchronized so the fitness is only calculated once when multiple threads ask for it.
+	 */
+	private synchronized double calculateFitness() {
+		if (this.fitness != -1)
+			return this.fitness;
+
+		if (this.loadCachedFitness())
+			return this.fitness;
+
+		long start = System.nanoTime();
+		this.phenotype = new Phenotype(this, this.core.getActivationFunction());
+		double fitness = this.core.getFitnessCalculator().getFitness(this);
+		this.core.getMetricsRegistry().recordEvaluation(System.nanoTime() - start);
+
+		// a recurrent network starts from zero again after its evaluation
+		this.phenotype.reset();
+
+		this.setFitness(fitness);
 		return this.fitness;
 	}
 
+	private boolean cacheMissed = false;
+
+	/**
+	 * Uses the cached fitness of a network with the same connections and weights.
+	 * Returns false if the cache is disabled or doesn't contain the network, the cache is only looked up once
+	 * so a miss is counted once even when the fitness is calculated somewhere else first.
+	 */
+	public synchronized boolean loadCachedFitness() {
+		if (this.fitness != -1)
+			return true;
+		if (this.cacheMissed)
+			return false;
+
+		FitnessCache cache = this.core.getFitnessCache();
+		if (cache == null)
+			return false;
+
+		Double cached = cache.get(cache.key(this.genes, this.activations));
+		if (cached == null) {
+			this.cacheMissed = true;
+			this.core.getMetricsRegistry().increment(Counter.FITNESS_CACHE_MISSES);
+			return false;
+		}
+		this.core.getMetricsRegistry().increment(Counter.FITNESS_CACHE_HITS);
+
+		this.getSpecies().updateHighestFitness(cached);
+		this.fitness = cached;
+		return true;
+	}
+
+	/**
+	 * Sets a fitness which was calculated somewhere else, for example by a remote worker.
+	 */
+	public synchronized void setFitness(double fitness) {
+		if (this.fitness != -1)
+			throw new UnsupportedOperationException("The fitness has already been calculated");
+
+		FitnessCache cache = this.core.getFitnessCache();
+		if (cache != null) {
+			cache.put(cache.key(this.genes, this.activations), fitness);
+		}
+		this.core.getMetricsRegistry().increment(Counter.FITNESS_EVALUATIONS);
+
+		this.getSpecies().updateHighestFitness(fitness);
+		this.fitness = fitness;
+	}
+
 	/**
 	 * Returns the same value as the most recent call of calculateFitness()
 	 * or -1 if calculateFitness() hasn't been called yet.
 	 */
 	public double getFitness() {
-		if (this.fitness == -1)
+		double fitness = this.fitness;
+		if (fitness == -1)
 			return calculateFitness();
 
-		return this.fitness;
+		return fitness;
+	}
+
+	public boolean isEvaluated() {
+		return this.fitness != -1;
 	}
 
 	/**
@@ -506,9 +904,9 @@ public class Genome implements Cloneable, Network {
 	@Override
 	public String toString() {
 		StringBuilder genes = new StringBuilder();
-		for (Entry<Integer, Gene> gen : this.genes.entrySet()) {
-			Gene gene = gen.getValue();
-			genes.append("[ " + gen.getKey() + "=" + gene.getInnovationNumber() + " , " + gene.getFrom() + " , " + gene.getTo() + " , " + gene.getWeight() + " " + gene.isEnabled() + " ] ");
+		for (int i = 0; i < this.genes.size(); i++) {
+			int innovationNumber = this.genes.getInnovationNumber(i);
+			genes.append("[ " + innovationNumber + "=" + innovationNumber + " , " + this.genes.getFrom(i) + " , " + this.genes.getTo(i) + " , " + this.genes.getWeight(i) + " " + this.genes.isEnabled(i) + " ] ");
 		}
 		return genes.toString();
 	}
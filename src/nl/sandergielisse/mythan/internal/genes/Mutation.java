@@ -16,14 +16,18 @@
 package nl.sandergielisse.mythan.internal.genes;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import nl.sandergielisse.mythan.ActivationType;
+import nl.sandergielisse.mythan.MetricsSnapshot.Counter;
 import nl.sandergielisse.mythan.Setting;
-import nl.sandergielisse.mythan.internal.Random;
+import nl.sandergielisse.mythan.internal.InnovationRegistry;
+import nl.sandergielisse.mythan.internal.InnovationRegistry.NodeSplit;
 
 /**
- * There are three types of mutations.
+ * There are four types of mutations.
  * 
  * 		1. Add a new node. The new input weight to that node will be 1.
  * 		   The output from the new node will be set to the old connection's weight value.
@@ -32,6 +36,8 @@ import nl.sandergielisse.mythan.internal.Random;
  * 
  * 		3. The weights of an existing connection are changed.
  * 
+ * 		4. A hidden node gets another activation type.
+ * 
  */
 public class Mutation {
 
@@ -47,26 +53,42 @@ public class Mutation {
 		 * 1. Add a new node. The new input weight to that node will be 1.
 		 * 	  The output from the new node will be set to the old connection's weight value.
 		 */
-		if (Random.success(this.genome.getCore().getSetting(Setting.MUTATION_NEW_NODE_CHANCE))) {
-			Gene randomGene = Random.random(new ArrayList<>(this.genome.getGenes()));
+		if (this.genome.getRandom().success(this.genome.getCore().getSetting(Setting.MUTATION_NEW_NODE_CHANCE))) {
+			Gene randomGene = this.genome.getRandom().random(new ArrayList<>(this.genome.getGenes()));
 			randomGene.setEnabled(false);
 
 			// two new genes
 			int from = randomGene.getFrom();
 			int to = randomGene.getTo();
 
-			this.genome.getCore().getNextInnovationNumber();
+			/**
+			 * If the same gene was split before in this generation, the same node and innovation numbers are used.
+			 * That is not possible if this genome already uses the node for something else.
+			 */
+			InnovationRegistry registry = this.genome.getCore().getInnovationRegistry();
+			int highestNode = this.genome.getHighestNode();
+			NodeSplit split = registry.getNodeSplit(randomGene.getInnovationNumber(), registry.getNextNode(highestNode));
+
+			int newNodeId = split.getNode();
+			int inInnovation = split.getInInnovationNumber();
+			int outInnovation = split.getOutInnovationNumber();
+
+			if ((newNodeId <= highestNode && this.genome.getAllNodes().contains(newNodeId)) || this.genome.hasGene(inInnovation) || this.genome.hasGene(outInnovation)) {
+				newNodeId = registry.getNextNode(highestNode);
+				inInnovation = registry.getNextInnovationNumber();
+				outInnovation = registry.getNextInnovationNumber();
+			}
 
-			int newNodeId = this.genome.getHighestNode() + 1;
-			this.genome.addGene(new Gene(this.genome.getCore().getNextInnovationNumber(), from, newNodeId, 1D, true), null, null);
-			this.genome.addGene(new Gene(this.genome.getCore().getNextInnovationNumber(), newNodeId, to, randomGene.getWeight(), true), null, null);
+			this.genome.addGene(new Gene(inInnovation, from, newNodeId, 1D, true), null, null);
+			this.genome.addGene(new Gene(outInnovation, newNodeId, to, randomGene.getWeight(), true), null, null);
 		}
 
 		/**
 		 * 2. Add a new link with a random weight between two existing nodes.
 		 *    Start by finding two yet unconnected nodes. One of them must be a hidden node.
+		 *    In recurrent mode, the link may start at an output node, go back to the node it starts at or form a cycle.
 		 */
-		if (Random.success(this.genome.getCore().getSetting(Setting.MUTATION_NEW_CONNECTION_CHANCE))) {
+		if (this.genome.getRandom().success(this.genome.getCore().getSetting(Setting.MUTATION_NEW_CONNECTION_CHANCE))) {
 			try {
 				/** 
 				 * Instead of looping through all possible connections and choosing one from 
@@ -78,6 +100,7 @@ public class Mutation {
 
 				int attempts = 0;
 
+				boolean recurrent = this.genome.getCore().isRecurrent();
 				Connection maybeNew = null;
 				do {
 					{
@@ -85,91 +108,81 @@ public class Mutation {
 							throw new MutationFailedException("New connection could not be created after 40 attempts.");
 					}
 
-					int from = Random.random(this.genome.getNodes(true, true, false));
+					int from = this.genome.getRandom().random(this.genome.getNodes(true, true, recurrent));
 
 					List<Integer> leftOver = this.genome.getNodes(false, true, true);
-					leftOver.remove((Object) from); // cast to Object, otherwise the wrong method remove(int index); will be called
+					if (!recurrent)
+						leftOver.remove((Object) from); // cast to Object, otherwise the wrong method remove(int index); will be called
 
 					if (leftOver.isEmpty())
 						continue;
 
-					int to = Random.random(leftOver);
+					int to = this.genome.getRandom().random(leftOver);
 
 					maybeNew = new Connection(from, to);
-				} while (maybeNew == null || maybeNew.getFrom() == maybeNew.getTo() || currentConnections.contains(maybeNew) || isRecurrent(maybeNew));
+				} while (maybeNew == null || (!recurrent && maybeNew.getFrom() == maybeNew.getTo()) || currentConnections.contains(maybeNew) || (!recurrent && isRecurrent(maybeNew)));
+
+				// add it to the network, using the same innovation number if this connection was made before in this generation
+				int innovationNumber = this.genome.getCore().getInnovationRegistry().getConnectionInnovation(maybeNew.getFrom(), maybeNew.getTo());
+				if (this.genome.hasGene(innovationNumber))
+					innovationNumber = this.genome.getCore().getNextInnovationNumber();
 
-				// add it to the network
-				genome.addGene(new Gene(this.genome.getCore().getNextInnovationNumber(), maybeNew.getFrom(), maybeNew.getTo(), Random.random(-1, 1), true), null, null);
+				genome.addGene(new Gene(innovationNumber, maybeNew.getFrom(), maybeNew.getTo(), this.genome.getRandom().random(-1, 1), true), null, null);
 			} catch (MutationFailedException e) {
-				// System.out.println("Mutation Failed: " + e.getMessage());
+				this.genome.getCore().getMetricsRegistry().increment(Counter.MUTATION_FAILURES);
 			}
 		}
 
 		/**
 		 * 3. The weights of an existing connection are changed.
 		 */
-		if (Random.success(this.genome.getCore().getSetting(Setting.MUTATION_WEIGHT_CHANCE))) {
-			if (Random.success(this.genome.getCore().getSetting(Setting.MUTATION_WEIGHT_RANDOM_CHANCE))) {
+		if (this.genome.getRandom().success(this.genome.getCore().getSetting(Setting.MUTATION_WEIGHT_CHANCE))) {
+			if (this.genome.getRandom().success(this.genome.getCore().getSetting(Setting.MUTATION_WEIGHT_RANDOM_CHANCE))) {
 				// assign a random new value
 				for (Gene gene : this.genome.getGenes()) {
 					double range = this.genome.getCore().getSetting(Setting.MUTATION_WEIGHT_CHANCE_RANDOM_RANGE);
-					gene.setWeight(Random.random(-range, range));
+					gene.setWeight(this.genome.getRandom().random(-range, range));
 				}
 			} else {
 				// uniformly perturb
 				for (Gene gene : this.genome.getGenes()) {
 					double disturbance = this.genome.getCore().getSetting(Setting.MUTATION_WEIGHT_MAX_DISTURBANCE);
-					double uniform = Random.random(-disturbance, disturbance);
+					double uniform = this.genome.getRandom().random(-disturbance, disturbance);
 					gene.setWeight(gene.getWeight() + uniform);
 				}
 			}
 		}
-	}
-
-	public boolean isRecurrent(Connection with) {
-		Genome tmpGenome = this.genome.clone(); // clone so we can change its genes without actually affecting the original genome
-
-		if (with != null) {
-			Gene gene = new Gene(tmpGenome.getHighestInnovationNumber() + 1, with.getFrom(), with.getTo(), 0, true);
-			tmpGenome.addGene(gene, null, null);
-		}
 
-		boolean recc = false;
-		for (int hiddenNode : tmpGenome.getHiddenNodes()) {
-			if (isRecurrent(new ArrayList<>(), tmpGenome, hiddenNode)) {
-				recc = true;
+		/**
+		 * 4. A hidden node gets another activation type. No random numbers are used when the chance is 0,
+		 *    so runs without activation types are the same as before.
+		 */
+		double activationChance = this.genome.getCore().getSetting(Setting.MUTATION_ACTIVATION_CHANCE);
+		if (activationChance > 0 && this.genome.getRandom().success(activationChance)) {
+			List<Integer> hidden = this.genome.getHiddenNodes();
+			if (!hidden.isEmpty()) {
+				int node = this.genome.getRandom().random(hidden);
+
+				// every type except the current one, where null is the activation function of the instance
+				List<ActivationType> types = new ArrayList<>();
+				types.add(null);
+				types.addAll(Arrays.asList(ActivationType.values()));
+				types.remove(this.genome.getActivation(node));
+
+				this.genome.setActivation(node, this.genome.getRandom().random(types));
 			}
 		}
-		return recc;
 	}
 
-	private boolean isRecurrent(List<Integer> path, Genome genome, int node) {
-		if (path.contains(node)) {
-			/**
-			 * We've been here before, we're in an infinite loop.
-			 */
-			return true;
-		}
-		path.add(node);
-
-		boolean recc = false;
-		for (int from : this.getInputs(genome, node)) {
-			if (!genome.isInputNode(from)) {
-				if (this.isRecurrent(path, genome, from)) {
-					recc = true;
-				}
-			}
-		}
-		return recc;
-	}
+	/**
+	 * Returns true if the genome would contain a cycle after adding the given connection,
+	 * or if the genome already contains a cycle when no connection is given.
+	 */
+	public boolean isRecurrent(Connection with) {
+		TopologicalOrder order = this.genome.getTopologicalOrder();
+		if (with == null)
+			return order.isCyclic();
 
-	private List<Integer> getInputs(Genome genome, int node) {
-		List<Integer> froms = new ArrayList<>();
-		for (Gene gene : genome.getGenes()) {
-			if (gene.getTo() == node) {
-				froms.add(gene.getFrom());
-			}
-		}
-		return froms;
+		return order.wouldCreateCycle(with.getFrom(), with.getTo());
 	}
 }
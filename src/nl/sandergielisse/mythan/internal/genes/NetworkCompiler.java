@@ -0,0 +1,463 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.genes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import nl.sandergielisse.mythan.ActivationFunction;
+import nl.sandergielisse.mythan.ActivationType;
+import nl.sandergielisse.mythan.Network;
+
+/**
+ * Compiles a phenotype into a class which calculates the network as straight-line code, so there are no loops or
+ * array lookups left for the weights and every value can be kept in a register. The weights are constants in the
+ * generated class and the nodes are calculated in the same order as the phenotype does, so the outputs are exactly the same.
+ * 
+ * The class is defined as a hidden class when the JVM supports it (Java 15 and later), which is unloaded together
+ * with its network. Otherwise the class gets a class loader of its own.
+ */
+public class NetworkCompiler {
+
+	/**
+	 * HotSpot doesn't JIT compile methods with more bytecode than this (HugeMethodLimit), such a network would
+	 * only be interpreted and is a lot slower than the phenotype.
+	 */
+	private static final int MAX_CODE_SIZE = 8000;
+
+	private static final String CLASS_NAME = "nl/sandergielisse/mythan/internal/genes/CompiledKernel";
+	private static final String KERNEL = "nl/sandergielisse/mythan/internal/genes/CompiledNetwork$Kernel";
+	private static final String FUNCTION = "nl/sandergielisse/mythan/ActivationFunction";
+	private static final String TYPE = "nl/sandergielisse/mythan/ActivationType";
+
+	/**
+	 * Locals of the generated calculate(double[] input, int inputOffset, double[] output, int outputOffset, ActivationFunction function),
+	 * the value of every slot of the phenotype is stored in two locals after the arguments.
+	 */
+	private static final int INPUT = 1, INPUT_OFFSET = 2, OUTPUT = 3, OUTPUT_OFFSET = 4, FUNCTION_ARG = 5, FIRST_VALUE = 6;
+
+	private static final Method DEFINE_HIDDEN_CLASS;
+	private static final Object NO_CLASS_OPTIONS;
+
+	static {
+		Method method = null;
+		Object options = null;
+		try {
+			Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+			options = Array.newInstance(option, 0);
+			method = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass());
+		} catch (ReflectiveOperationException e) {
+			// hidden classes are not supported by this JVM
+		}
+		DEFINE_HIDDEN_CLASS = method;
+		NO_CLASS_OPTIONS = options;
+	}
+
+	/**
+	 * Returns a network which calculates the same outputs as the given network, or the given network itself
+	 * when it is too large to compile profitably or is not a genome.
+	 */
+	public static Network compile(Network network) {
+		if (!(network instanceof Genome))
+			return network;
+
+		Genome genome = (Genome) network;
+		Phenotype phenotype = genome.getPhenotype();
+
+		// the kernel doesn't keep the values of a recurrent network between calls
+		if (phenotype.isRecurrent())
+			return network;
+
+		byte[] bytes = generate(phenotype);
+		if (bytes == null)
+			return network;
+
+		return new CompiledNetwork(genome, phenotype, define(bytes));
+	}
+
+	private static CompiledNetwork.Kernel define(byte[] bytes) {
+		try {
+			Class<?> type;
+			if (DEFINE_HIDDEN_CLASS != null) {
+				MethodHandles.Lookup lookup = (MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(MethodHandles.lookup(), bytes, true, NO_CLASS_OPTIONS);
+				type = lookup.lookupClass();
+			} else {
+				type = new KernelLoader(NetworkCompiler.class.getClassLoader()).define(bytes);
+			}
+			return (CompiledNetwork.Kernel) type.getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not define compiled network", e);
+		}
+	}
+
+	/**
+	 * Returns the class file of the compiled phenotype, or null if the code would be too large.
+	 */
+	static byte[] generate(Phenotype phenotype) {
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classRef(CLASS_NAME);
+		int superClass = pool.classRef("java/lang/Object");
+		int kernel = pool.classRef(KERNEL);
+		int superInit = pool.methodRef(superClass, "<init>", "()V", false);
+		int activate = pool.methodRef(pool.classRef(FUNCTION), "activate", "(D)D", true);
+
+		/**
+		 * Nodes with an activation type call the static method of their type. These are small static methods, which the JIT can inline.
+		 */
+		int[] typed = new int[ActivationType.values().length];
+		int type = pool.classRef(TYPE);
+		for (ActivationType activation : ActivationType.values()) {
+			typed[activation.ordinal()] = pool.methodRef(type, activation.name().toLowerCase(Locale.ROOT), "(D)D", false);
+		}
+
+		// every connection takes at least 6 bytes, don't bother with networks which can never fit
+		if (phenotype.getOffsets()[phenotype.getNodeCount()] > MAX_CODE_SIZE / 6)
+			return null;
+
+		Code doubles = calculate(phenotype, pool, activate, typed, false);
+		Code floats = doubles == null ? null : calculate(phenotype, pool, activate, typed, true);
+		if (floats == null)
+			return null;
+
+		Code init = new Code();
+		init.op(0x2A); // aload_0
+		init.op(0xB7); // invokespecial
+		init.u2(superInit);
+		init.op(0xB1); // return
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(doubles.size() + floats.size() + 1024);
+			DataOutputStream out = new DataOutputStream(bytes);
+			int codeName = pool.utf8("Code");
+			int initName = pool.utf8("<init>");
+			int initDescriptor = pool.utf8("()V");
+			int calculateName = pool.utf8("calculate");
+			int doublesDescriptor = pool.utf8("([DI[DIL" + FUNCTION + ";)V");
+			int floatsDescriptor = pool.utf8("([FI[FIL" + FUNCTION + ";)V");
+			int maxLocals = FIRST_VALUE + (phenotype.isSinglePrecision() ? 1 : 2) * (phenotype.getInputCount() + phenotype.getNodeCount());
+
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(52); // Java 8, the code has no branches so no stack map frames are needed
+			pool.write(out);
+			out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(kernel);
+			out.writeShort(0); // fields
+			out.writeShort(3); // methods
+			init.writeMethod(out, 0x0001, initName, initDescriptor, codeName, 1, 1);
+			doubles.writeMethod(out, 0x0001, calculateName, doublesDescriptor, codeName, 7, maxLocals);
+			floats.writeMethod(out, 0x0001, calculateName, floatsDescriptor, codeName, 7, maxLocals);
+			out.writeShort(0); // attributes
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns the code of the calculate method for samples stored as doubles or floats, or null if the code would be too large.
+	 * In single precision every value takes one local, otherwise two.
+	 */
+	private static Code calculate(Phenotype phenotype, ConstantPool pool, int activate, int[] typed, boolean floatArrays) {
+		boolean single = phenotype.isSinglePrecision();
+		int size = single ? 1 : 2;
+		int load = single ? 0x17 : 0x18; // fload or dload
+		int store = single ? 0x38 : 0x39; // fstore or dstore
+
+		int inputCount = phenotype.getInputCount();
+		int nodeCount = phenotype.getNodeCount();
+		int[] offsets = phenotype.getOffsets();
+		int[] sources = phenotype.getSources();
+		int[] outputs = phenotype.getOutputs();
+		ActivationType[] types = phenotype.getActivationTypes();
+
+		Code code = new Code();
+		for (int i = 0; i < inputCount; i++) {
+			code.op(0x19, INPUT); // aload
+			code.op(0x15, INPUT_OFFSET); // iload
+			code.pushInt(i);
+			code.op(0x60); // iadd
+			code.op(floatArrays ? 0x30 : 0x31); // faload or daload
+			code.convert(floatArrays, single);
+			code.local(store, FIRST_VALUE + size * i);
+		}
+
+		for (int n = 0; n < nodeCount; n++) {
+			ActivationType type = types == null ? null : types[n];
+			if (type == null)
+				code.op(0x19, FUNCTION_ARG); // aload
+			code.op(single ? 0x0B : 0x0E); // fconst_0 or dconst_0
+			for (int c = offsets[n]; c < offsets[n + 1]; c++) {
+				code.local(load, FIRST_VALUE + size * sources[c]);
+				if (single) {
+					code.constant(pool.floatConstant(phenotype.getFloatWeights()[c]));
+					code.op(0x6A); // fmul
+					code.op(0x62); // fadd
+				} else {
+					code.op(0x14); // ldc2_w
+					code.u2(pool.doubleConstant(phenotype.getWeights()[c]));
+					code.op(0x6B); // dmul
+					code.op(0x63); // dadd
+				}
+			}
+			code.convert(single, false);
+			if (type == null) {
+				code.op(0xB9); // invokeinterface
+				code.u2(activate);
+				code.op(3, 0);
+			} else {
+				code.op(0xB8); // invokestatic
+				code.u2(typed[type.ordinal()]);
+			}
+			code.convert(false, single);
+			code.local(store, FIRST_VALUE + size * (inputCount + n));
+
+			if (code.size() > MAX_CODE_SIZE)
+				return null;
+		}
+
+		for (int i = 0; i < outputs.length; i++) {
+			code.op(0x19, OUTPUT); // aload
+			code.op(0x15, OUTPUT_OFFSET); // iload
+			code.pushInt(i);
+			code.op(0x60); // iadd
+			code.local(load, FIRST_VALUE + size * outputs[i]);
+			code.convert(single, floatArrays);
+			code.op(floatArrays ? 0x51 : 0x52); // fastore or dastore
+		}
+		code.op(0xB1); // return
+
+		return code.size() > MAX_CODE_SIZE ? null : code;
+	}
+
+	private static class ConstantPool {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(this.bytes);
+		private final Map<Object, Integer> entries = new HashMap<>();
+		private int count = 1;
+
+		private int add(Object key, int size) {
+			Integer index = this.entries.get(key);
+			if (index != null)
+				return index;
+
+			index = this.count;
+			this.count += size;
+			this.entries.put(key, index);
+			return -index;
+		}
+
+		int utf8(String value) {
+			int index = this.add(value, 1);
+			if (index < 0) {
+				this.write(1);
+				this.writeUTF(value);
+			}
+			return Math.abs(index);
+		}
+
+		int classRef(String name) {
+			int nameIndex = this.utf8(name);
+			int index = this.add("class " + name, 1);
+			if (index < 0) {
+				this.write(7);
+				this.writeShort(nameIndex);
+			}
+			return Math.abs(index);
+		}
+
+		int methodRef(int owner, String name, String descriptor, boolean isInterface) {
+			int nameIndex = this.utf8(name);
+			int descriptorIndex = this.utf8(descriptor);
+			int nameAndType = this.add("type " + name + descriptor, 1);
+			if (nameAndType < 0) {
+				this.write(12);
+				this.writeShort(nameIndex);
+				this.writeShort(descriptorIndex);
+			}
+
+			int index = this.add("method " + owner + " " + name + descriptor, 1);
+			if (index < 0) {
+				this.write(isInterface ? 11 : 10);
+				this.writeShort(owner);
+				this.writeShort(Math.abs(nameAndType));
+			}
+			return Math.abs(index);
+		}
+
+		/**
+		 * Doubles and floats are keyed by their bits, so 0.0 and -0.0 are different constants.
+		 */
+		int doubleConstant(double value) {
+			long bits = Double.doubleToRawLongBits(value);
+			int index = this.add(bits, 2);
+			if (index < 0) {
+				this.write(6);
+				try {
+					this.out.writeLong(bits);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			return Math.abs(index);
+		}
+
+		int floatConstant(float value) {
+			int bits = Float.floatToRawIntBits(value);
+			int index = this.add(bits, 1);
+			if (index < 0) {
+				this.write(4);
+				this.writeShort(bits >>> 16);
+				this.writeShort(bits);
+			}
+			return Math.abs(index);
+		}
+
+		private void write(int tag) {
+			this.bytes.write(tag);
+		}
+
+		private void writeShort(int value) {
+			this.bytes.write(value >>> 8);
+			this.bytes.write(value);
+		}
+
+		private void writeUTF(String value) {
+			try {
+				this.out.writeUTF(value);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		void write(DataOutputStream target) throws IOException {
+			if (this.count > 0xFFFF)
+				throw new IllegalStateException("Constant pool of " + this.count + " entries is too large");
+
+			target.writeShort(this.count);
+			this.bytes.writeTo(target);
+		}
+	}
+
+	private static class Code {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		int size() {
+			return this.bytes.size();
+		}
+
+		void op(int... values) {
+			for (int value : values) {
+				this.bytes.write(value);
+			}
+		}
+
+		void u2(int value) {
+			this.bytes.write(value >>> 8);
+			this.bytes.write(value);
+		}
+
+		/**
+		 * Writes a load or store of the given local, which needs the wide prefix when the index doesn't fit in a byte.
+		 */
+		void local(int opcode, int index) {
+			if (index > 0xFF) {
+				this.op(0xC4, opcode);
+				this.u2(index);
+			} else {
+				this.op(opcode, index);
+			}
+		}
+
+		/**
+		 * Converts the value on the stack between a float and a double.
+		 */
+		void convert(boolean fromFloat, boolean toFloat) {
+			if (fromFloat && !toFloat)
+				this.op(0x8D); // f2d
+			else if (!fromFloat && toFloat)
+				this.op(0x90); // d2f
+		}
+
+		/**
+		 * Loads a constant which takes a single entry.
+		 */
+		void constant(int index) {
+			if (index > 0xFF) {
+				this.op(0x13); // ldc_w
+				this.u2(index);
+			} else {
+				this.op(0x12, index); // ldc
+			}
+		}
+
+		void pushInt(int value) {
+			if (value <= 5) {
+				this.op(0x03 + value); // iconst
+			} else if (value <= Byte.MAX_VALUE) {
+				this.op(0x10, value); // bipush
+			} else {
+				this.op(0x11); // sipush
+				this.u2(value);
+			}
+		}
+
+		void writeMethod(DataOutputStream out, int access, int name, int descriptor, int codeName, int maxStack, int maxLocals) throws IOException {
+			if (maxLocals > 0xFFFF)
+				throw new IllegalStateException("Method with " + maxLocals + " locals is too large");
+
+			out.writeShort(access);
+			out.writeShort(name);
+			out.writeShort(descriptor);
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(12 + this.bytes.size());
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(this.bytes.size());
+			this.bytes.writeTo(out);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+		}
+	}
+
+	/**
+	 * Used when hidden classes are not supported, every class gets its own loader so it can be unloaded with its network.
+	 */
+	private static class KernelLoader extends ClassLoader {
+
+		KernelLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(byte[] bytes) {
+			return this.defineClass(CLASS_NAME.replace('/', '.'), bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,995 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.genes;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.sandergielisse.mythan.ActivationFunction;
+import nl.sandergielisse.mythan.ActivationType;
+
+/**
+ * A genome compiled into a flat feed forward network.
+ * 
+ * All nodes that contribute to an output are stored in topological order, so the network
+ * can be calculated with a single pass over the arrays. The enabled connections going into
+ * the n-th node are stored at sources[offsets[n]] up to sources[offsets[n + 1]], where every
+ * source is an index in the value buffer. The first slots of the value buffer hold the inputs.
+ * 
+ * When calculating a batch, the values of a block of samples are stored node by node, so every
+ * connection is a single loop over the samples of the block which the JIT can vectorize.
+ * 
+ * Nodes with an activation type are sorted by their depth and type, so nodes of the same type which don't depend
+ * on each other are next to each other. A batch activates such a run of nodes with a single call of the type.
+ * 
+ * When the genome stores its weights in single precision, the network is calculated with floats: the inputs are rounded
+ * to floats, every sum is a float and the result of the activation function is rounded to a float.
+ * 
+ * In recurrent mode (see Setting.RECURRENT) the connections may form cycles. Every call of calculate() is then a single
+ * step in which every node uses the values of the previous step, so the values are kept between calls until reset()
+ * is called. The nodes are stored in the order they are found from the outputs, because the order doesn't matter.
+ * 
+ * The network itself never changes, the value buffers are kept per thread and reused between calls. So a phenotype
+ * may be used by multiple threads at once, every thread calculates with its own buffers and, in recurrent mode,
+ * keeps its own values. The buffers of a thread are shared by all phenotypes it calculates, only the values which
+ * a recurrent network keeps between calls belong to the phenotype.
+ */
+public class Phenotype {
+
+	/**
+	 * The maximum amount of samples calculated at once in a batch, this keeps the batch buffer small enough to stay in cache.
+	 */
+	private static final int BLOCK_SIZE = 256;
+
+	private final ActivationFunction function;
+	private final int inputCount;
+	private final int nodeCount;
+	private final int[] offsets;
+	private final int[] sources;
+	private final double[] weights; // null in single precision
+	private final float[] floatWeights; // null in double precision
+	private final int[] outputs;
+
+	/**
+	 * The activation type and function of every node, both are null if every node uses the activation function of the instance.
+	 */
+	private final ActivationType[] types;
+	private final ActivationFunction[] functions;
+
+	/**
+	 * The end (exclusive) of the run of nodes starting at the n-th node, null if every node is a run of its own.
+	 */
+	private final int[] runEnds;
+
+	private final boolean recurrent;
+
+	/**
+	 * The values a recurrent network keeps between calls for every thread, null in feed forward mode.
+	 */
+	private final ThreadLocal<State> state;
+
+	private static class State {
+
+		private final double[] values; // null in single precision
+		private final float[] floatValues; // null in double precision
+
+		private State(Phenotype phenotype) {
+			int size = phenotype.inputCount + phenotype.nodeCount;
+			boolean singlePrecision = phenotype.isSinglePrecision();
+			this.values = singlePrecision ? null : new double[size];
+			this.floatValues = singlePrecision ? new float[size] : null;
+		}
+	}
+
+	/**
+	 * The buffers of the calling thread, which grow to the largest network the thread calculates.
+	 * They are not kept by the phenotypes, so the buffers of a phenotype which is no longer used don't stay alive.
+	 */
+	private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+	private static class Buffers {
+
+		private double[] values = new double[0];
+		private float[] floatValues = new float[0];
+
+		/**
+		 * The values of the nodes calculated by a recurrent step.
+		 */
+		private double[] next = new double[0];
+		private float[] floatNext = new float[0];
+
+		/**
+		 * A single sample of a recurrent batch.
+		 */
+		private double[] input = new double[0];
+		private double[] output = new double[0];
+
+		private double[] batch = new double[0];
+		private float[] floatBatch = new float[0];
+
+		/**
+		 * The sums of a single precision batch, converted to doubles to be activated.
+		 */
+		private final double[] activations = new double[BLOCK_SIZE];
+
+		private double[] values(int size) {
+			if (this.values.length < size)
+				this.values = new double[size];
+			return this.values;
+		}
+
+		private float[] floatValues(int size) {
+			if (this.floatValues.length < size)
+				this.floatValues = new float[size];
+			return this.floatValues;
+		}
+
+		private double[] next(int size) {
+			if (this.next.length < size)
+				this.next = new double[size];
+			return this.next;
+		}
+
+		private float[] floatNext(int size) {
+			if (this.floatNext.length < size)
+				this.floatNext = new float[size];
+			return this.floatNext;
+		}
+
+		private double[] input(int size) {
+			if (this.input.length < size)
+				this.input = new double[size];
+			return this.input;
+		}
+
+		private double[] output(int size) {
+			if (this.output.length < size)
+				this.output = new double[size];
+			return this.output;
+		}
+
+		private double[] batch(int size) {
+			if (this.batch.length < size)
+				this.batch = new double[size];
+			return this.batch;
+		}
+
+		private float[] floatBatch(int size) {
+			if (this.floatBatch.length < size)
+				this.floatBatch = new float[size];
+			return this.floatBatch;
+		}
+	}
+
+	public Phenotype(Genome genome, ActivationFunction function) {
+		this.function = function;
+		this.recurrent = genome.getCore().isRecurrent();
+
+		Map<Integer, Integer> slots = new HashMap<>();
+		for (int input : genome.getInputNodes()) {
+			slots.put(input, slots.size());
+		}
+		this.inputCount = slots.size();
+
+		/**
+		 * Group the indices of the enabled genes by the node they go into, in order of increasing innovation number.
+		 */
+		GeneStore genes = genome.getGeneStore();
+		Map<Integer, List<Integer>> incoming = new HashMap<>();
+		for (int i = 0; i < genes.size(); i++) {
+			if (genes.isEnabled(i)) {
+				List<Integer> list = incoming.get(genes.getTo(i));
+				if (list == null) {
+					incoming.put(genes.getTo(i), list = new ArrayList<>());
+				}
+				list.add(i);
+			}
+		}
+
+		List<Integer> order = this.recurrent ? this.reach(genome, genes, incoming, slots) : this.sort(genome, genes, incoming, slots);
+		this.nodeCount = order.size();
+
+		ActivationType[] types = null;
+		for (int node : order) {
+			if (genome.getActivation(node) != null) {
+				if (!this.recurrent)
+					order = this.group(genome, genes, incoming, slots, order);
+				types = new ActivationType[this.nodeCount];
+				for (int n = 0; n < this.nodeCount; n++) {
+					types[n] = genome.getActivation(order.get(n));
+				}
+				break;
+			}
+		}
+
+		int connections = 0;
+		for (int node : order) {
+			List<Integer> list = incoming.get(node);
+			if (list != null)
+				connections += list.size();
+		}
+
+		boolean singlePrecision = genes.isSinglePrecision();
+		this.offsets = new int[this.nodeCount + 1];
+		this.sources = new int[connections];
+		this.weights = singlePrecision ? null : new double[connections];
+		this.floatWeights = singlePrecision ? new float[connections] : null;
+
+		int c = 0;
+		for (int n = 0; n < this.nodeCount; n++) {
+			this.offsets[n] = c;
+			List<Integer> list = incoming.get(order.get(n));
+			if (list != null) {
+				for (int gene : list) {
+					this.sources[c] = slots.get(genes.getFrom(gene));
+					if (singlePrecision)
+						this.floatWeights[c] = (float) genes.getWeight(gene);
+					else
+						this.weights[c] = genes.getWeight(gene);
+					c++;
+				}
+			}
+		}
+		this.offsets[this.nodeCount] = c;
+
+		this.outputs = new int[genome.getOutputNodes().size()];
+		for (int i = 0; i < this.outputs.length; i++) {
+			this.outputs[i] = slots.get(genome.getOutputNodes().get(i));
+		}
+		this.types = types;
+		this.functions = functions(types, function);
+		this.runEnds = this.runs();
+		this.state = this.recurrent ? ThreadLocal.withInitial(() -> new State(this)) : null;
+	}
+
+	private Phenotype(ActivationFunction function, int inputCount, int[] offsets, int[] sources, double[] weights, float[] floatWeights, int[] outputs, ActivationType[] types, boolean recurrent) {
+		this.function = function;
+		this.recurrent = recurrent;
+		this.inputCount = inputCount;
+		this.nodeCount = offsets.length - 1;
+		this.offsets = offsets;
+		this.sources = sources;
+		this.weights = weights;
+		this.floatWeights = floatWeights;
+		this.outputs = outputs;
+		this.types = types;
+		this.functions = functions(types, function);
+		this.runEnds = this.runs();
+		this.state = recurrent ? ThreadLocal.withInitial(() -> new State(this)) : null;
+	}
+
+	private static ActivationFunction[] functions(ActivationType[] types, ActivationFunction function) {
+		if (types == null)
+			return null;
+
+		ActivationFunction[] functions = new ActivationFunction[types.length];
+		for (int n = 0; n < types.length; n++) {
+			functions[n] = types[n] == null ? function : types[n];
+		}
+		return functions;
+	}
+
+	/**
+	 * A run continues while the nodes have the same activation type and don't use the value of a node in the run.
+	 * Recurrent networks are calculated one sample at a time, so they don't need runs.
+	 */
+	private int[] runs() {
+		if (this.types == null || this.recurrent)
+			return null;
+
+		int[] runEnds = new int[this.nodeCount];
+		int start = 0;
+		for (int n = 0; n < this.nodeCount; n++) {
+			boolean independent = this.types[n] == this.types[start];
+			for (int c = this.offsets[n]; c < this.offsets[n + 1] && independent; c++) {
+				independent = this.sources[c] < this.inputCount + start;
+			}
+			if (!independent) {
+				runEnds[start] = n;
+				start = n;
+			}
+		}
+		if (this.nodeCount > 0)
+			runEnds[start] = this.nodeCount;
+		return runEnds;
+	}
+
+	/**
+	 * Writes the compiled network, so it can be read by read() in another process.
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(this.inputCount);
+		out.writeInt(this.nodeCount);
+		for (int offset : this.offsets)
+			out.writeInt(offset);
+		for (int source : this.sources)
+			out.writeInt(source);
+
+		out.writeBoolean(this.isSinglePrecision());
+		if (this.isSinglePrecision()) {
+			for (float weight : this.floatWeights)
+				out.writeFloat(weight);
+		} else {
+			for (double weight : this.weights)
+				out.writeDouble(weight);
+		}
+
+		out.writeInt(this.outputs.length);
+		for (int output : this.outputs)
+			out.writeInt(output);
+
+		out.writeBoolean(this.types != null);
+		if (this.types != null) {
+			for (ActivationType type : this.types)
+				out.writeByte(type == null ? -1 : type.ordinal());
+		}
+
+		out.writeBoolean(this.recurrent);
+	}
+
+	/**
+	 * Reads a network written by write(), which is calculated with the given activation function.
+	 */
+	public static Phenotype read(DataInput in, ActivationFunction function) throws IOException {
+		int inputCount = in.readInt();
+		int nodeCount = in.readInt();
+		if (inputCount < 0 || nodeCount < 0)
+			throw new IOException("Invalid network of " + inputCount + " inputs and " + nodeCount + " nodes");
+
+		int[] offsets = new int[nodeCount + 1];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = in.readInt();
+			if (offsets[i] < (i == 0 ? 0 : offsets[i - 1]) || (i == 0 && offsets[i] != 0))
+				throw new IOException("Invalid offset " + offsets[i]);
+		}
+
+		int connections = offsets[nodeCount];
+
+		int[] sources = new int[connections];
+		for (int i = 0; i < connections; i++) {
+			sources[i] = in.readInt();
+			if (sources[i] < 0 || sources[i] >= inputCount + nodeCount)
+				throw new IOException("Invalid source " + sources[i]);
+		}
+
+		double[] weights = null;
+		float[] floatWeights = null;
+		if (in.readBoolean()) {
+			floatWeights = new float[connections];
+			for (int i = 0; i < connections; i++)
+				floatWeights[i] = in.readFloat();
+		} else {
+			weights = new double[connections];
+			for (int i = 0; i < connections; i++)
+				weights[i] = in.readDouble();
+		}
+
+		int[] outputs = new int[in.readInt()];
+		for (int i = 0; i < outputs.length; i++) {
+			outputs[i] = in.readInt();
+			if (outputs[i] < 0 || outputs[i] >= inputCount + nodeCount)
+				throw new IOException("Invalid output " + outputs[i]);
+		}
+
+		ActivationType[] types = null;
+		if (in.readBoolean()) {
+			types = new ActivationType[nodeCount];
+			for (int n = 0; n < nodeCount; n++) {
+				int type = in.readByte();
+				if (type < -1 || type >= ActivationType.values().length)
+					throw new IOException("Invalid activation type " + type);
+				types[n] = type == -1 ? null : ActivationType.values()[type];
+			}
+		}
+		boolean recurrent = in.readBoolean();
+		return new Phenotype(function, inputCount, offsets, sources, weights, floatWeights, outputs, types, recurrent);
+	}
+
+	/**
+	 * Sorts the nodes by their depth and then by their activation type, the slots of the nodes are assigned again.
+	 * The depth of a node is one more than the largest depth of the nodes it depends on, so the order stays topological.
+	 */
+	private List<Integer> group(Genome genome, GeneStore genes, Map<Integer, List<Integer>> incoming, Map<Integer, Integer> slots, List<Integer> order) {
+		Map<Integer, Integer> depths = new HashMap<>();
+		for (int node : order) {
+			int depth = 0;
+			List<Integer> list = incoming.get(node);
+			if (list != null) {
+				for (int gene : list) {
+					Integer from = depths.get(genes.getFrom(gene));
+					if (from != null)
+						depth = Math.max(depth, from + 1);
+				}
+			}
+			depths.put(node, depth);
+		}
+
+		List<Integer> grouped = new ArrayList<>(order);
+		grouped.sort(Comparator.comparing((Integer node) -> depths.get(node)).thenComparing(node -> {
+			ActivationType type = genome.getActivation(node);
+			return type == null ? -1 : type.ordinal();
+		}));
+
+		for (int n = 0; n < grouped.size(); n++) {
+			slots.put(grouped.get(n), this.inputCount + n);
+		}
+		return grouped;
+	}
+
+	/**
+	 * Returns every node needed to calculate the outputs, a node always comes after the nodes it depends on.
+	 * Also assigns every returned node its slot in the value buffer.
+	 */
+	private List<Integer> sort(Genome genome, GeneStore genes, Map<Integer, List<Integer>> incoming, Map<Integer, Integer> slots) {
+		List<Integer> order = new ArrayList<>();
+		Map<Integer, Boolean> visiting = new HashMap<>(); // true while on the stack, false once sorted
+
+		/**
+		 * Depth first search from every output node, the stack is kept explicitly so deep genomes can't overflow it.
+		 */
+		int[] nodes = new int[16];
+		int[] positions = new int[16];
+
+		for (int output : genome.getOutputNodes()) {
+			if (slots.containsKey(output) || visiting.containsKey(output))
+				continue;
+
+			int depth = 0;
+			nodes[0] = output;
+			positions[0] = 0;
+			visiting.put(output, true);
+
+			while (depth >= 0) {
+				int node = nodes[depth];
+				List<Integer> list = incoming.get(node);
+
+				if (list != null && positions[depth] < list.size()) {
+					int from = genes.getFrom(list.get(positions[depth]++));
+					if (slots.containsKey(from))
+						continue;
+
+					Boolean state = visiting.get(from);
+					if (state == null) {
+						if (++depth == nodes.length) {
+							nodes = Arrays.copyOf(nodes, depth * 2);
+							positions = Arrays.copyOf(positions, depth * 2);
+						}
+						nodes[depth] = from;
+						positions[depth] = 0;
+						visiting.put(from, true);
+					} else if (state) {
+						throw new IllegalStateException("Genome contains a recurrent connection into node " + from);
+					}
+				} else {
+					visiting.put(node, false);
+					slots.put(node, this.inputCount + order.size());
+					order.add(node);
+					depth--;
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * Returns every node needed to calculate the outputs of a recurrent network, in the order they are found from the outputs.
+	 * Also assigns every returned node its slot in the value buffer.
+	 */
+	private List<Integer> reach(Genome genome, GeneStore genes, Map<Integer, List<Integer>> incoming, Map<Integer, Integer> slots) {
+		List<Integer> order = new ArrayList<>();
+		for (int output : genome.getOutputNodes()) {
+			if (!slots.containsKey(output)) {
+				slots.put(output, this.inputCount + order.size());
+				order.add(output);
+			}
+		}
+
+		for (int n = 0; n < order.size(); n++) {
+			List<Integer> list = incoming.get(order.get(n));
+			if (list == null)
+				continue;
+
+			for (int gene : list) {
+				int from = genes.getFrom(gene);
+				if (!slots.containsKey(from)) {
+					slots.put(from, this.inputCount + order.size());
+					order.add(from);
+				}
+			}
+		}
+		return order;
+	}
+
+	public int getInputCount() {
+		return inputCount;
+	}
+
+	public int getOutputCount() {
+		return outputs.length;
+	}
+
+	public ActivationFunction getFunction() {
+		return function;
+	}
+
+	public boolean isSinglePrecision() {
+		return this.floatWeights != null;
+	}
+
+	/**
+	 * Returns true if the network keeps the values of its nodes between calls, see Setting.RECURRENT.
+	 */
+	public boolean isRecurrent() {
+		return recurrent;
+	}
+
+	/**
+	 * Sets the values of a recurrent network back to zero, like they were when the phenotype was created.
+	 * Only the values of the calling thread are reset. Feed forward networks don't keep their values, so nothing happens for them.
+	 */
+	public void reset() {
+		if (!this.recurrent)
+			return;
+
+		State state = this.state.get();
+		if (state.values != null)
+			Arrays.fill(state.values, 0);
+		else
+			Arrays.fill(state.floatValues, 0);
+	}
+
+	/**
+	 * The arrays below are used by the NetworkCompiler and may not be modified.
+	 */
+	int getNodeCount() {
+		return nodeCount;
+	}
+
+	int[] getOffsets() {
+		return offsets;
+	}
+
+	int[] getSources() {
+		return sources;
+	}
+
+	double[] getWeights() {
+		return weights;
+	}
+
+	float[] getFloatWeights() {
+		return floatWeights;
+	}
+
+	int[] getOutputs() {
+		return outputs;
+	}
+
+	/**
+	 * Returns null if every node uses the activation function of the instance.
+	 */
+	ActivationType[] getActivationTypes() {
+		return types;
+	}
+
+	public double[] calculate(double[] input) {
+		double[] output = new double[this.outputs.length];
+		this.calculate(input, output);
+		return output;
+	}
+
+	/**
+	 * Calculates the network for the given input and writes the result into the given output array.
+	 */
+	public void calculate(double[] input, double[] output) {
+		if (input.length != this.inputCount) {
+			throw new IllegalArgumentException("Input size " + input.length + " was not equal to the specified length " + this.inputCount);
+		}
+		if (this.recurrent) {
+			this.step(input, output);
+			return;
+		}
+		if (this.isSinglePrecision()) {
+			this.calculateFloats(input, output);
+			return;
+		}
+
+		final double[] values = BUFFERS.get().values(this.inputCount + this.nodeCount);
+		System.arraycopy(input, 0, values, 0, this.inputCount);
+
+		for (int n = 0, slot = this.inputCount; n < this.nodeCount; n++, slot++) {
+			double sum = 0;
+			for (int c = this.offsets[n], end = this.offsets[n + 1]; c < end; c++) {
+				sum += values[this.sources[c]] * this.weights[c];
+			}
+			values[slot] = this.functions == null ? this.function.activate(sum) : this.functions[n].activate(sum);
+		}
+
+		for (int i = 0; i < this.outputs.length; i++) {
+			output[i] = values[this.outputs[i]];
+		}
+	}
+
+	private void calculateFloats(double[] input, double[] output) {
+		final float[] values = BUFFERS.get().floatValues(this.inputCount + this.nodeCount);
+		final float[] weights = this.floatWeights;
+		for (int i = 0; i < this.inputCount; i++) {
+			values[i] = (float) input[i];
+		}
+
+		for (int n = 0, slot = this.inputCount; n < this.nodeCount; n++, slot++) {
+			float sum = 0;
+			for (int c = this.offsets[n], end = this.offsets[n + 1]; c < end; c++) {
+				sum += values[this.sources[c]] * weights[c];
+			}
+			values[slot] = (float) (this.functions == null ? this.function.activate(sum) : this.functions[n].activate(sum));
+		}
+
+		for (int i = 0; i < this.outputs.length; i++) {
+			output[i] = values[this.outputs[i]];
+		}
+	}
+
+	/**
+	 * Calculates a single step of a recurrent network. The new values are written to a buffer of their own first,
+	 * because every node uses the values of the previous step.
+	 */
+	private void step(double[] input, double[] output) {
+		if (this.isSinglePrecision()) {
+			this.stepFloats(input, output);
+			return;
+		}
+
+		final double[] values = this.state.get().values;
+		final double[] next = BUFFERS.get().next(this.nodeCount);
+		System.arraycopy(input, 0, values, 0, this.inputCount);
+
+		for (int n = 0; n < this.nodeCount; n++) {
+			double sum = 0;
+			for (int c = this.offsets[n], end = this.offsets[n + 1]; c < end; c++) {
+				sum += values[this.sources[c]] * this.weights[c];
+			}
+			next[n] = this.functions == null ? this.function.activate(sum) : this.functions[n].activate(sum);
+		}
+		System.arraycopy(next, 0, values, this.inputCount, this.nodeCount);
+
+		for (int i = 0; i < this.outputs.length; i++) {
+			output[i] = values[this.outputs[i]];
+		}
+	}
+
+	private void stepFloats(double[] input, double[] output) {
+		final float[] values = this.state.get().floatValues;
+		final float[] next = BUFFERS.get().floatNext(this.nodeCount);
+		final float[] weights = this.floatWeights;
+		for (int i = 0; i < this.inputCount; i++) {
+			values[i] = (float) input[i];
+		}
+
+		for (int n = 0; n < this.nodeCount; n++) {
+			float sum = 0;
+			for (int c = this.offsets[n], end = this.offsets[n + 1]; c < end; c++) {
+				sum += values[this.sources[c]] * weights[c];
+			}
+			next[n] = (float) (this.functions == null ? this.function.activate(sum) : this.functions[n].activate(sum));
+		}
+		System.arraycopy(next, 0, values, this.inputCount, this.nodeCount);
+
+		for (int i = 0; i < this.outputs.length; i++) {
+			output[i] = values[this.outputs[i]];
+		}
+	}
+
+	/**
+	 * Calculates the network for every row of the inputs and writes the result into the same row of the outputs.
+	 * A recurrent network calculates the rows as steps after each other.
+	 */
+	public void calculate(double[][] inputs, double[][] outputs) {
+		if (inputs.length != outputs.length) {
+			throw new IllegalArgumentException("Amount of inputs " + inputs.length + " was not equal to the amount of outputs " + outputs.length);
+		}
+		if (this.recurrent) {
+			for (int k = 0; k < inputs.length; k++) {
+				this.calculate(inputs[k], outputs[k]);
+			}
+			return;
+		}
+
+		int stride = Math.min(inputs.length, BLOCK_SIZE);
+		double[] values = this.isSinglePrecision() ? null : this.getBatchBuffer(stride);
+		float[] floats = this.isSinglePrecision() ? this.getFloatBatchBuffer(stride) : null;
+
+		for (int start = 0; start < inputs.length; start += stride) {
+			int count = Math.min(stride, inputs.length - start);
+
+			for (int k = 0; k < count; k++) {
+				double[] input = inputs[start + k];
+				if (input.length != this.inputCount) {
+					throw new IllegalArgumentException("Input size " + input.length + " was not equal to the specified length " + this.inputCount);
+				}
+				for (int i = 0; i < this.inputCount; i++) {
+					if (floats != null)
+						floats[i * stride + k] = (float) input[i];
+					else
+						values[i * stride + k] = input[i];
+				}
+			}
+
+			if (floats != null)
+				this.calculateBlock(floats, stride, count);
+			else
+				this.calculateBlock(values, stride, count);
+
+			for (int k = 0; k < count; k++) {
+				double[] output = outputs[start + k];
+				for (int i = 0; i < this.outputs.length; i++) {
+					output[i] = floats != null ? floats[this.outputs[i] * stride + k] : values[this.outputs[i] * stride + k];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calculates the network for the given amount of samples, stored row after row in the inputs and outputs.
+	 * A recurrent network calculates the samples as steps after each other.
+	 */
+	public void calculate(double[] inputs, double[] outputs, int samples) {
+		this.checkBuffers(inputs.length, outputs.length, samples);
+		if (this.recurrent) {
+			Buffers buffers = BUFFERS.get();
+			double[] input = buffers.input(this.inputCount);
+			double[] output = buffers.output(this.outputs.length);
+			for (int k = 0; k < samples; k++) {
+				System.arraycopy(inputs, k * this.inputCount, input, 0, this.inputCount);
+				this.step(input, output);
+				System.arraycopy(output, 0, outputs, k * this.outputs.length, this.outputs.length);
+			}
+			return;
+		}
+
+		int stride = Math.min(samples, BLOCK_SIZE);
+		double[] values = this.isSinglePrecision() ? null : this.getBatchBuffer(stride);
+		float[] floats = this.isSinglePrecision() ? this.getFloatBatchBuffer(stride) : null;
+
+		for (int start = 0; start < samples; start += stride) {
+			int count = Math.min(stride, samples - start);
+
+			for (int k = 0; k < count; k++) {
+				int row = (start + k) * this.inputCount;
+				for (int i = 0; i < this.inputCount; i++) {
+					if (floats != null)
+						floats[i * stride + k] = (float) inputs[row + i];
+					else
+						values[i * stride + k] = inputs[row + i];
+				}
+			}
+
+			if (floats != null)
+				this.calculateBlock(floats, stride, count);
+			else
+				this.calculateBlock(values, stride, count);
+
+			for (int k = 0; k < count; k++) {
+				int row = (start + k) * this.outputs.length;
+				for (int i = 0; i < this.outputs.length; i++) {
+					outputs[row + i] = floats != null ? floats[this.outputs[i] * stride + k] : values[this.outputs[i] * stride + k];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as calculate(double[], double[], int) for samples stored as floats, which avoids converting
+	 * the samples to doubles in single precision.
+	 */
+	public void calculate(float[] inputs, float[] outputs, int samples) {
+		this.checkBuffers(inputs.length, outputs.length, samples);
+		if (this.recurrent) {
+			Buffers buffers = BUFFERS.get();
+			double[] input = buffers.input(this.inputCount);
+			double[] output = buffers.output(this.outputs.length);
+			for (int k = 0; k < samples; k++) {
+				for (int i = 0; i < this.inputCount; i++)
+					input[i] = inputs[k * this.inputCount + i];
+				this.step(input, output);
+				for (int i = 0; i < this.outputs.length; i++)
+					outputs[k * this.outputs.length + i] = (float) output[i];
+			}
+			return;
+		}
+
+		int stride = Math.min(samples, BLOCK_SIZE);
+		double[] values = this.isSinglePrecision() ? null : this.getBatchBuffer(stride);
+		float[] floats = this.isSinglePrecision() ? this.getFloatBatchBuffer(stride) : null;
+
+		for (int start = 0; start < samples; start += stride) {
+			int count = Math.min(stride, samples - start);
+
+			for (int k = 0; k < count; k++) {
+				int row = (start + k) * this.inputCount;
+				for (int i = 0; i < this.inputCount; i++) {
+					if (floats != null)
+						floats[i * stride + k] = inputs[row + i];
+					else
+						values[i * stride + k] = inputs[row + i];
+				}
+			}
+
+			if (floats != null)
+				this.calculateBlock(floats, stride, count);
+			else
+				this.calculateBlock(values, stride, count);
+
+			for (int k = 0; k < count; k++) {
+				int row = (start + k) * this.outputs.length;
+				for (int i = 0; i < this.outputs.length; i++) {
+					outputs[row + i] = floats != null ? floats[this.outputs[i] * stride + k] : (float) values[this.outputs[i] * stride + k];
+				}
+			}
+		}
+	}
+
+	private void checkBuffers(int inputLength, int outputLength, int samples) {
+		if (inputLength < samples * this.inputCount) {
+			throw new IllegalArgumentException("Input buffer of size " + inputLength + " can not hold " + samples + " samples");
+		}
+		if (outputLength < samples * this.outputs.length) {
+			throw new IllegalArgumentException("Output buffer of size " + outputLength + " can not hold " + samples + " samples");
+		}
+	}
+
+	/**
+	 * The n-th slot of the k-th sample is stored at values[n * stride + k].
+	 * 
+	 * The connections of a node are added four at a time, so the sums of the block are loaded and stored once for every
+	 * four connections instead of for every connection. They are still added one after another in the same order as
+	 * calculate(double[], double[]) does, so a sample gives exactly the same output in a batch.
+	 */
+	private void calculateBlock(double[] values, int stride, int count) {
+		for (int n = 0; n < this.nodeCount;) {
+			int end = this.runEnds == null ? n + 1 : this.runEnds[n];
+			for (int m = n; m < end; m++) {
+				this.sum(values, m, stride, count);
+			}
+
+			ActivationFunction function = this.functions == null ? this.function : this.functions[n];
+			if (count == stride) {
+				// the nodes of the run are stored after each other
+				function.activate(values, values, (this.inputCount + n) * stride, (this.inputCount + end) * stride);
+			} else {
+				for (int m = n; m < end; m++) {
+					int target = (this.inputCount + m) * stride;
+					function.activate(values, values, target, target + count);
+				}
+			}
+			n = end;
+		}
+	}
+
+	private void sum(double[] values, int n, int stride, int count) {
+		final int[] offsets = this.offsets;
+		final int[] sources = this.sources;
+		final double[] weights = this.weights;
+
+		int target = (this.inputCount + n) * stride;
+		Arrays.fill(values, target, target + count, 0);
+
+		int c = offsets[n];
+		int end = offsets[n + 1];
+
+		for (; c + 4 <= end; c += 4) {
+			int s0 = sources[c] * stride, s1 = sources[c + 1] * stride, s2 = sources[c + 2] * stride, s3 = sources[c + 3] * stride;
+			double w0 = weights[c], w1 = weights[c + 1], w2 = weights[c + 2], w3 = weights[c + 3];
+			for (int k = 0; k < count; k++) {
+				values[target + k] = values[target + k] + values[s0 + k] * w0 + values[s1 + k] * w1 + values[s2 + k] * w2 + values[s3 + k] * w3;
+			}
+		}
+
+		for (; c < end; c++) {
+			int source = sources[c] * stride;
+			double weight = weights[c];
+			for (int k = 0; k < count; k++) {
+				values[target + k] += values[source + k] * weight;
+			}
+		}
+	}
+
+	/**
+	 * Same as calculateBlock(double[], int, int) in single precision.
+	 */
+	private void calculateBlock(float[] values, int stride, int count) {
+		final double[] activations = BUFFERS.get().activations;
+		for (int n = 0; n < this.nodeCount;) {
+			int end = this.runEnds == null ? n + 1 : this.runEnds[n];
+			for (int m = n; m < end; m++) {
+				this.sum(values, m, stride, count);
+			}
+
+			ActivationFunction function = this.functions == null ? this.function : this.functions[n];
+			if (count == stride) {
+				// the nodes of the run are stored after each other
+				activate(function, values, (this.inputCount + n) * stride, (this.inputCount + end) * stride, activations);
+			} else {
+				for (int m = n; m < end; m++) {
+					int target = (this.inputCount + m) * stride;
+					activate(function, values, target, target + count, activations);
+				}
+			}
+			n = end;
+		}
+	}
+
+	/**
+	 * Activates the values from (inclusive) up to to (exclusive) with the bulk activate of the function, a part at a time.
+	 * Converting the values to doubles in a separate loop is several times faster than converting them around every
+	 * call to activate(double), and gives the same floats as calculate(double[], double[]) does.
+	 */
+	private static void activate(ActivationFunction function, float[] values, int from, int to, double[] activations) {
+		for (int start = from; start < to; start += activations.length) {
+			int length = Math.min(activations.length, to - start);
+			for (int i = 0; i < length; i++) {
+				activations[i] = values[start + i];
+			}
+			function.activate(activations, activations, 0, length);
+			for (int i = 0; i < length; i++) {
+				values[start + i] = (float) activations[i];
+			}
+		}
+	}
+
+	private void sum(float[] values, int n, int stride, int count) {
+		final int[] offsets = this.offsets;
+		final int[] sources = this.sources;
+		final float[] weights = this.floatWeights;
+
+		int target = (this.inputCount + n) * stride;
+		Arrays.fill(values, target, target + count, 0);
+
+		int c = offsets[n];
+		int end = offsets[n + 1];
+
+		for (; c + 4 <= end; c += 4) {
+			int s0 = sources[c] * stride, s1 = sources[c + 1] * stride, s2 = sources[c + 2] * stride, s3 = sources[c + 3] * stride;
+			float w0 = weights[c], w1 = weights[c + 1], w2 = weights[c + 2], w3 = weights[c + 3];
+			for (int k = 0; k < count; k++) {
+				values[target + k] = values[target + k] + values[s0 + k] * w0 + values[s1 + k] * w1 + values[s2 + k] * w2 + values[s3 + k] * w3;
+			}
+		}
+
+		for (; c < end; c++) {
+			int source = sources[c] * stride;
+			float weight = weights[c];
+			for (int k = 0; k < count; k++) {
+				values[target + k] += values[source + k] * weight;
+			}
+		}
+	}
+
+	private double[] getBatchBuffer(int stride) {
+		return BUFFERS.get().batch((this.inputCount + this.nodeCount) * stride);
+	}
+
+	private float[] getFloatBatchBuffer(int stride) {
+		return BUFFERS.get().floatBatch((this.inputCount + this.nodeCount) * stride);
+	}
+}
@@ -0,0 +1,347 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.genes;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the nodes of a genome in topological order while connections are added, using the
+ * dynamic topological sort of Pearce and Kelly. Because every connection goes from a lower
+ * to a higher position, a new connection from a lower to a higher position can never create
+ * a cycle. Otherwise only the nodes between the two positions have to be searched.
+ * 
+ * Disabled connections are part of the order as well, because they may be enabled again.
+ * Nodes are indexed by their id, so the arrays are as long as the highest node id.
+ * 
+ * The buffers used by the searches are as long as the arrays of the nodes, because a search visits
+ * every node at most once. So checking or adding a connection between known nodes allocates nothing,
+ * only the lists of connections of a node grow when it gets more of them.
+ */
+class TopologicalOrder {
+
+	private int[] positions = new int[0]; // node -> position, -1 if the node is unknown
+	private int[] nodes = new int[0]; // position -> node
+	private int size = 0;
+
+	private int[][] successors = new int[0][];
+	private int[] successorCount = new int[0];
+	private int[][] predecessors = new int[0][];
+	private int[] predecessorCount = new int[0];
+
+	private boolean cyclic = false;
+
+	private int[] marks = new int[0];
+	private int mark = 0;
+	private int[] stack = new int[0];
+	private int[] found = new int[0];
+	private int[] reached = new int[0]; // the nodes found by the forward search while searching backward
+	private int[] pool = new int[0]; // the positions reused by the moved nodes
+
+	public TopologicalOrder(Genome genome) {
+		for (int node : genome.getInputNodes())
+			this.addNode(node);
+
+		GeneStore genes = genome.getGeneStore();
+		for (int i = 0; i < genes.size(); i++)
+			this.addEdge(genes.getFrom(i), genes.getTo(i));
+
+		this.sort();
+	}
+
+	/**
+	 * Copies the order of another genome with the same connections, which is cheaper than sorting them again.
+	 */
+	private TopologicalOrder(TopologicalOrder other) {
+		this.positions = other.positions.clone();
+		this.nodes = other.nodes.clone();
+		this.size = other.size;
+
+		this.successors = new int[other.successors.length][];
+		this.predecessors = new int[other.predecessors.length][];
+		for (int node = 0; node < this.successors.length; node++) {
+			if (other.successors[node] != null)
+				this.successors[node] = other.successors[node].clone();
+			if (other.predecessors[node] != null)
+				this.predecessors[node] = other.predecessors[node].clone();
+		}
+		this.successorCount = other.successorCount.clone();
+		this.predecessorCount = other.predecessorCount.clone();
+		this.cyclic = other.cyclic;
+
+		int length = this.positions.length;
+		this.marks = new int[length];
+		this.stack = new int[length];
+		this.found = new int[length];
+		this.reached = new int[length];
+		this.pool = new int[length];
+	}
+
+	/**
+	 * Returns an order which can be changed without changing this order. Only reads this order, so multiple
+	 * threads may copy it at once.
+	 */
+	public TopologicalOrder copy() {
+		return new TopologicalOrder(this);
+	}
+
+	/**
+	 * Returns true if the genome already contains a cycle.
+	 */
+	public boolean isCyclic() {
+		return cyclic;
+	}
+
+	/**
+	 * Returns true if a connection between the given nodes would create a cycle.
+	 */
+	public boolean wouldCreateCycle(int from, int to) {
+		if (this.cyclic || from == to)
+			return true;
+
+		if (!this.contains(from) || !this.contains(to))
+			return false; // a new node has no connections yet
+
+		int upper = this.positions[from];
+		if (this.positions[to] > upper)
+			return false;
+
+		return this.searchForward(to, upper, from) < 0;
+	}
+
+	/**
+	 * Adds a connection and moves the affected nodes so the order stays topological.
+	 */
+	public void addConnection(int from, int to) {
+		this.addNode(from);
+		this.addNode(to);
+		this.addEdge(from, to);
+
+		if (this.cyclic)
+			return;
+
+		int lower = this.positions[to];
+		int upper = this.positions[from];
+		if (lower > upper)
+			return;
+
+		if (from == to) {
+			this.cyclic = true;
+			return;
+		}
+
+		int forward = this.searchForward(to, upper, from);
+		if (forward < 0) {
+			this.cyclic = true;
+			return;
+		}
+		final int[] forwardNodes = this.reached;
+		System.arraycopy(this.found, 0, forwardNodes, 0, forward);
+		int backward = this.searchBackward(from, lower);
+		final int[] backwardNodes = this.found;
+
+		/**
+		 * The nodes reaching the new connection are placed before the nodes reached by it,
+		 * both keep their relative order and together they reuse the positions they had.
+		 * The two groups can't share a node, otherwise there would be a cycle, so the pool
+		 * is never longer than the amount of nodes.
+		 */
+		this.sortByPosition(forwardNodes, forward);
+		this.sortByPosition(backwardNodes, backward);
+
+		final int[] pool = this.pool;
+		int c = 0;
+		for (int i = 0; i < backward; i++)
+			pool[c++] = this.positions[backwardNodes[i]];
+		for (int i = 0; i < forward; i++)
+			pool[c++] = this.positions[forwardNodes[i]];
+		Arrays.sort(pool, 0, c);
+
+		c = 0;
+		for (int i = 0; i < backward; i++)
+			this.place(backwardNodes[i], pool[c++]);
+		for (int i = 0; i < forward; i++)
+			this.place(forwardNodes[i], pool[c++]);
+	}
+
+	private void place(int node, int position) {
+		this.positions[node] = position;
+		this.nodes[position] = node;
+	}
+
+	private void sortByPosition(int[] list, int length) {
+		for (int i = 0; i < length; i++)
+			list[i] = this.positions[list[i]];
+		Arrays.sort(list, 0, length);
+		for (int i = 0; i < length; i++)
+			list[i] = this.nodes[list[i]];
+	}
+
+	/**
+	 * Collects every node reachable from start with a position of at most upper into found.
+	 * Returns the amount of nodes found, or -1 if the target was reached.
+	 */
+	private int searchForward(int start, int upper, int target) {
+		this.nextMark();
+		int found = 0;
+		int depth = 0;
+		this.stack[depth++] = start;
+		this.marks[start] = this.mark;
+
+		while (depth > 0) {
+			int node = this.stack[--depth];
+			found = this.found(found, node);
+
+			int[] next = this.successors[node];
+			for (int i = 0, count = this.successorCount[node]; i < count; i++) {
+				int successor = next[i];
+				if (successor == target)
+					return -1;
+
+				if (this.marks[successor] != this.mark && this.positions[successor] < upper) {
+					this.marks[successor] = this.mark;
+					depth = this.push(depth, successor);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Collects every node reaching start with a position larger than lower into found, returns the amount of nodes found.
+	 */
+	private int searchBackward(int start, int lower) {
+		this.nextMark();
+		int found = 0;
+		int depth = 0;
+		this.stack[depth++] = start;
+		this.marks[start] = this.mark;
+
+		while (depth > 0) {
+			int node = this.stack[--depth];
+			found = this.found(found, node);
+
+			int[] next = this.predecessors[node];
+			for (int i = 0, count = this.predecessorCount[node]; i < count; i++) {
+				int predecessor = next[i];
+				if (this.marks[predecessor] != this.mark && this.positions[predecessor] > lower) {
+					this.marks[predecessor] = this.mark;
+					depth = this.push(depth, predecessor);
+				}
+			}
+		}
+		return found;
+	}
+
+	private int push(int depth, int node) {
+		this.stack[depth] = node;
+		return depth + 1;
+	}
+
+	private int found(int found, int node) {
+		this.found[found] = node;
+		return found + 1;
+	}
+
+	private void nextMark() {
+		if (++this.mark == Integer.MAX_VALUE) {
+			Arrays.fill(this.marks, 0);
+			this.mark = 1;
+		}
+	}
+
+	private boolean contains(int node) {
+		return node < this.positions.length && this.positions[node] != -1;
+	}
+
+	private void addNode(int node) {
+		if (node >= this.positions.length) {
+			int length = Math.max(node + 1, this.positions.length * 2);
+			int old = this.positions.length;
+
+			this.positions = Arrays.copyOf(this.positions, length);
+			Arrays.fill(this.positions, old, length, -1);
+			this.successors = Arrays.copyOf(this.successors, length);
+			this.successorCount = Arrays.copyOf(this.successorCount, length);
+			this.predecessors = Arrays.copyOf(this.predecessors, length);
+			this.predecessorCount = Arrays.copyOf(this.predecessorCount, length);
+			this.marks = Arrays.copyOf(this.marks, length);
+
+			// every node is pushed and found at most once per search
+			this.stack = new int[length];
+			this.found = new int[length];
+			this.reached = new int[length];
+			this.pool = new int[length];
+		}
+
+		if (this.positions[node] == -1) {
+			if (this.size == this.nodes.length)
+				this.nodes = Arrays.copyOf(this.nodes, Math.max(16, this.size * 2));
+
+			this.place(node, this.size++);
+		}
+	}
+
+	private void addEdge(int from, int to) {
+		this.addNode(from);
+		this.addNode(to);
+		this.successors[from] = append(this.successors[from], this.successorCount[from]++, to);
+		this.predecessors[to] = append(this.predecessors[to], this.predecessorCount[to]++, from);
+	}
+
+	private static int[] append(int[] array, int index, int value) {
+		if (array == null)
+			array = new int[4];
+		else if (index == array.length)
+			array = Arrays.copyOf(array, index * 2);
+
+		array[index] = value;
+		return array;
+	}
+
+	/**
+	 * Sorts all nodes from scratch (Kahn's algorithm), marks the order as cyclic if not every node could be sorted.
+	 */
+	private void sort() {
+		int[] remaining = new int[this.positions.length];
+		int[] queue = new int[this.size];
+		int head = 0;
+		int tail = 0;
+
+		for (int p = 0; p < this.size; p++) {
+			int node = this.nodes[p];
+			remaining[node] = this.predecessorCount[node];
+			if (remaining[node] == 0)
+				queue[tail++] = node;
+		}
+
+		while (head < tail) {
+			int node = queue[head++];
+			int[] next = this.successors[node];
+			for (int i = 0, count = this.successorCount[node]; i < count; i++) {
+				if (--remaining[next[i]] == 0)
+					queue[tail++] = next[i];
+			}
+		}
+
+		if (tail != this.size) {
+			this.cyclic = true;
+			return;
+		}
+
+		for (int p = 0; p < this.size; p++)
+			this.place(queue[p], p);
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.remote;
+
+/**
+ * Constants of the protocol between the coordinator and the fitness workers.
+ * 
+ * After connecting, both sides send the magic number and version. The coordinator then sends batches,
+ * every batch starts with BATCH and the amount of networks, followed by the id and phenotype of every
+ * network. The worker answers every batch in order with the amount of results, followed by the id, a
+ * result flag and either the fitness or an error message for every network. The coordinator may send
+ * the next batches before the previous batch has been answered.
+ */
+public class Protocol {
+
+	public static final int MAGIC = 0x4D59574B; // MYWK
+	public static final int VERSION = 4;
+
+	/**
+	 * Sent by the coordinator before a batch of networks.
+	 */
+	public static final byte BATCH = 1;
+
+	/**
+	 * Sent by the coordinator before it closes the connection.
+	 */
+	public static final byte CLOSE = 2;
+
+	/**
+	 * Sent by the worker before a fitness.
+	 */
+	public static final byte RESULT_OK = 0;
+
+	/**
+	 * Sent by the worker before an error message, when the fitness calculator threw an exception.
+	 */
+	public static final byte RESULT_FAILED = 1;
+}
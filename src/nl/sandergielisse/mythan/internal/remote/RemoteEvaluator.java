@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.remote;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nl.sandergielisse.mythan.Setting;
+import nl.sandergielisse.mythan.internal.EvolutionCore;
+import nl.sandergielisse.mythan.internal.Tasks;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+
+/**
+ * Calculates the fitness of genomes on worker processes, see FitnessWorker.
+ * 
+ * The genomes are compiled to phenotypes and sent in batches, every worker gets batches until all genomes
+ * are evaluated. When a worker is lost or doesn't answer within Setting.REMOTE_TIMEOUT, its unanswered batches
+ * are sent to the other workers. When no worker can be reached, the remaining genomes are evaluated locally.
+ */
+public class RemoteEvaluator {
+
+	/**
+	 * The amount of batches sent to a worker before waiting for the answer of the first one.
+	 */
+	private static final int PIPELINE_DEPTH = 2;
+
+	/**
+	 * Every worker gets about this amount of batches per generation, so faster workers can take over work from slower ones.
+	 */
+	private static final int BATCHES_PER_WORKER = 4;
+	private static final int MAX_BATCH_SIZE = 64;
+
+	/**
+	 * The amount of times the workers are connected again when batches were lost, before evaluating them locally.
+	 */
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final EvolutionCore core;
+	private final List<WorkerConnection> workers = new ArrayList<>();
+	private final ExecutorService threads = Executors.newCachedThreadPool(r -> {
+		Thread thread = new Thread(r, "Mythan worker connection");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public RemoteEvaluator(EvolutionCore core, List<InetSocketAddress> workers) {
+		if (workers.isEmpty())
+			throw new IllegalArgumentException("At least one worker must be given");
+
+		this.core = core;
+		for (InetSocketAddress address : workers) {
+			this.workers.add(new WorkerConnection(address, core.getEvents()));
+		}
+	}
+
+	/**
+	 * Calculates the fitness of all given genomes, cached fitnesses are not sent to the workers.
+	 */
+	public synchronized void evaluate(List<Genome> genomes) {
+		List<Genome> remaining = new ArrayList<>();
+		for (Genome genome : genomes) {
+			if (!genome.loadCachedFitness()) {
+				remaining.add(genome);
+			}
+		}
+		if (remaining.isEmpty())
+			return;
+
+		int batchSize = (int) Math.ceil(remaining.size() / (double) (this.workers.size() * BATCHES_PER_WORKER));
+		batchSize = Math.max(1, Math.min(MAX_BATCH_SIZE, batchSize));
+
+		Deque<List<Genome>> pending = new ConcurrentLinkedDeque<>();
+		for (int start = 0; start < remaining.size(); start += batchSize) {
+			pending.add(remaining.subList(start, Math.min(remaining.size(), start + batchSize)));
+		}
+
+		for (int attempt = 0; attempt < MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+			List<WorkerConnection> connected = new ArrayList<>();
+			int timeout = (int) Math.min(Integer.MAX_VALUE, this.core.getSetting(Setting.REMOTE_TIMEOUT) * 1000);
+			for (WorkerConnection worker : this.workers) {
+				if (worker.connect(timeout)) {
+					connected.add(worker);
+				}
+			}
+			if (connected.isEmpty())
+				break;
+
+			Tasks.forEach(this.threads, connected.size(), 1, i -> connected.get(i).process(pending, PIPELINE_DEPTH));
+		}
+
+		if (!pending.isEmpty()) {
+			List<Genome> local = new ArrayList<>();
+			for (List<Genome> batch : pending) {
+				local.addAll(batch);
+			}
+			int count = local.size();
+			this.core.getEvents().publish(l -> l.remoteFallback(count));
+			Tasks.forEach(this.core.getFitnessExecutor(), local.size(), 1, i -> local.get(i).getFitness());
+		}
+	}
+
+	/**
+	 * Closes the connections to all workers.
+	 */
+	public synchronized void close() {
+		for (WorkerConnection worker : this.workers) {
+			worker.close();
+		}
+		this.threads.shutdown();
+	}
+}
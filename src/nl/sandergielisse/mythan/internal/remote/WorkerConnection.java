@@ -0,0 +1,192 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.sandergielisse.mythan.internal.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import nl.sandergielisse.mythan.internal.EventBus;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+
+/**
+ * The connection of the coordinator to a single worker.
+ */
+class WorkerConnection {
+
+	private static final int CONNECT_TIMEOUT = 5000;
+
+	private final InetSocketAddress address;
+	private final EventBus events;
+	private Socket socket;
+	private DataInputStream in;
+	private DataOutputStream out;
+	private boolean reachable = true;
+
+	WorkerConnection(InetSocketAddress address, EventBus events) {
+		this.address = address;
+		this.events = events;
+	}
+
+	/**
+	 * Connects to the worker if not connected yet, returns false if the worker can't be reached.
+	 * A read which takes longer than the given timeout in milliseconds fails as if the connection was lost, 0 waits forever.
+	 */
+	boolean connect(int readTimeout) {
+		if (this.socket != null) {
+			try {
+				this.socket.setSoTimeout(readTimeout);
+				return true;
+			} catch (IOException e) {
+				this.close();
+			}
+		}
+
+		try {
+			this.socket = new Socket();
+			this.socket.connect(this.address, CONNECT_TIMEOUT);
+			this.socket.setTcpNoDelay(true);
+			this.socket.setSoTimeout(readTimeout);
+			this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream(), 1 << 16));
+			this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream(), 1 << 16));
+
+			this.out.writeInt(Protocol.MAGIC);
+			this.out.writeInt(Protocol.VERSION);
+			this.out.flush();
+
+			if (this.in.readInt() != Protocol.MAGIC || this.in.readInt() != Protocol.VERSION)
+				throw new IOException("Worker uses a different protocol");
+
+			this.reachable = true;
+			return true;
+		} catch (IOException e) {
+			// only report it once, the worker is tried again for every generation
+			if (this.reachable) {
+				String reason = e.getMessage();
+				this.events.publish(l -> l.workerUnreachable(this.address, reason));
+				this.reachable = false;
+			}
+			this.close();
+			return false;
+		}
+	}
+
+	/**
+	 * Sends batches until there are no pending batches left, keeping multiple batches in flight so the worker never waits for the network.
+	 * When the connection is lost or the worker doesn't answer in time, the unanswered batches are added back to the pending batches.
+	 */
+	void process(Deque<List<Genome>> pending, int pipelineDepth) {
+		Deque<List<Genome>> inFlight = new ArrayDeque<>();
+		try {
+			while (true) {
+				while (inFlight.size() < pipelineDepth) {
+					List<Genome> batch = pending.poll();
+					if (batch == null)
+						break;
+
+					this.send(batch);
+					inFlight.add(batch);
+				}
+				if (inFlight.isEmpty())
+					return;
+
+				this.out.flush();
+				this.receive(inFlight.peek());
+				inFlight.poll();
+			}
+		} catch (IOException e) {
+			int batches = inFlight.size();
+			this.events.publish(l -> l.workerLost(this.address, batches, e.toString()));
+			pending.addAll(inFlight);
+			this.close();
+		}
+	}
+
+	private void send(List<Genome> batch) throws IOException {
+		this.out.writeByte(Protocol.BATCH);
+		this.out.writeInt(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			this.out.writeInt(i);
+			batch.get(i).getPhenotype().write(this.out);
+		}
+	}
+
+	/**
+	 * The fitnesses are only set once the whole batch has been received, so a batch is either retried completely or not at all.
+	 * When the worker could not calculate a fitness, the rest of the batch is still read and the batch fails like a lost connection,
+	 * so it ends up being calculated locally where the fitness calculator throws its own exception.
+	 */
+	private void receive(List<Genome> batch) throws IOException {
+		int count = this.in.readInt();
+		if (count != batch.size())
+			throw new IOException("Worker answered " + count + " results for a batch of " + batch.size());
+
+		double[] fitnesses = new double[count];
+		String error = null;
+		for (int i = 0; i < count; i++) {
+			int id = this.in.readInt();
+			if (id < 0 || id >= count)
+				throw new IOException("Worker answered unknown id " + id);
+
+			byte result = this.in.readByte();
+			if (result == Protocol.RESULT_FAILED) {
+				String message = this.in.readUTF();
+				if (error == null)
+					error = message;
+				continue;
+			}
+			if (result != Protocol.RESULT_OK)
+				throw new IOException("Worker answered unknown result " + result);
+
+			fitnesses[id] = this.in.readDouble();
+		}
+		if (error != null)
+			throw new IOException("Worker could not calculate the fitness: " + error);
+
+		for (int i = 0; i < count; i++) {
+			batch.get(i).setFitness(fitnesses[i]);
+		}
+	}
+
+	void close() {
+		if (this.socket == null)
+			return;
+
+		try {
+			if (!this.socket.isClosed() && this.out != null) {
+				this.out.writeByte(Protocol.CLOSE);
+				this.out.flush();
+			}
+		} catch (IOException e) {
+			// the connection is already lost
+		}
+		try {
+			this.socket.close();
+		} catch (IOException e) {
+			// ignored, the socket is not used anymore
+		}
+		this.socket = null;
+		this.in = null;
+		this.out = null;
+	}
+}
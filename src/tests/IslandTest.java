@@ -0,0 +1,69 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tests;
+
+import examples.xor.XOR;
+import nl.sandergielisse.mythan.CustomizedSigmoidActivation;
+import nl.sandergielisse.mythan.MigrationTopology;
+import nl.sandergielisse.mythan.Setting;
+import nl.sandergielisse.mythan.internal.EvolutionCore;
+import nl.sandergielisse.mythan.internal.IslandCore;
+import nl.sandergielisse.mythan.internal.Species;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+
+/**
+ * Verifies that a seeded island run can be reproduced, although the islands reproduce at the same time.
+ */
+public class IslandTest {
+
+	private static final int ISLANDS = 4;
+	private static final int POPULATION = 400;
+	private static final long SEED = 42;
+
+	/**
+	 * Evolves XOR twice with the same seed and compares the populations of every island after the runs.
+	 */
+	public static void seededRunsAreEqual() {
+		String first = run();
+		String second = run();
+		if (!first.equals(second))
+			throw new AssertionError("Island runs with seed " + SEED + " differ:\n" + first + "\n" + second);
+	}
+
+	/**
+	 * Returns the genes and fitness of every genome on every island, in the order of the populations.
+	 */
+	private static String run() {
+		XOR xor = new XOR();
+		IslandCore core = new IslandCore(ISLANDS, MigrationTopology.RING, xor.getInputSize(), xor.getOutputSize(), new CustomizedSigmoidActivation(), xor.getFitnessCalculator(), SEED);
+		XOR.configure(core);
+		// more new nodes and migrations than the example, so the islands use their innovation registries more often
+		core.setSetting(Setting.MUTATION_NEW_NODE_CHANCE, 0.03);
+		core.setSetting(Setting.MIGRATION_INTERVAL, 2);
+		core.trainToFitness(POPULATION, XOR.TARGET_FITNESS);
+
+		StringBuilder result = new StringBuilder();
+		for (EvolutionCore island : core.getIslands()) {
+			result.append("island generation=" + island.getPopulationManager().getGeneration() + "\n");
+			for (Species sp : island.getPopulationManager().getSpecies()) {
+				for (Genome genome : sp.getMembers()) {
+					result.append(genome.getFitness() + " " + genome + "\n");
+				}
+			}
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import benchmarks.SyntheticGenomes;
+import nl.sandergielisse.mythan.ActivationFunction;
+import nl.sandergielisse.mythan.ActivationType;
+import nl.sandergielisse.mythan.BackTraceTask;
+import nl.sandergielisse.mythan.CustomizedSigmoidActivation;
+import nl.sandergielisse.mythan.Setting;
+import nl.sandergielisse.mythan.internal.EvolutionCore;
+import nl.sandergielisse.mythan.internal.genes.Gene;
+import nl.sandergielisse.mythan.internal.genes.Genome;
+import nl.sandergielisse.mythan.internal.genes.Phenotype;
+
+/**
+ * Verifies the phenotype against BackTraceTask, the reference implementation, on random genomes.
+ */
+public class PhenotypeTest {
+
+	private static final ActivationFunction FUNCTION = new CustomizedSigmoidActivation();
+	private static final int[] SIZES = { 8, 20, 100, 500, 2000 };
+
+	/**
+	 * The phenotype adds the connections of a node in the same order as BackTraceTask, so the outputs must be exactly the same.
+	 */
+	public static void backTraceEquivalence() {
+		Random random = new Random(1);
+		for (Genome genome : genomes(1, false)) {
+			Phenotype phenotype = new Phenotype(genome, FUNCTION);
+			for (int i = 0; i < 10; i++) {
+				double[] input = input(random);
+				double[] expected = new BackTraceTask(genome, FUNCTION, input).calculateOutput();
+				assertEquals(expected, phenotype.calculate(input), genome);
+			}
+		}
+	}
+
+	/**
+	 * Every sample of a batch must give exactly the same output as when it is calculated on its own.
+	 */
+	public static void batchEquivalence() {
+		Random random = new Random(2);
+		for (Genome genome : genomes(2, false)) {
+			Phenotype phenotype = new Phenotype(genome, FUNCTION);
+			int samples = 1 + random.nextInt(600);
+			int outputCount = phenotype.getOutputCount();
+
+			double[][] inputs = new double[samples][];
+			double[] flat = new double[samples * SyntheticGenomes.INPUTS];
+			for (int k = 0; k < samples; k++) {
+				inputs[k] = input(random);
+				System.arraycopy(inputs[k], 0, flat, k * SyntheticGenomes.INPUTS, SyntheticGenomes.INPUTS);
+			}
+
+			double[][] outputs = new double[samples][outputCount];
+			double[] flatOutputs = new double[samples * outputCount];
+			phenotype.calculate(inputs, outputs);
+			phenotype.calculate(flat, flatOutputs, samples);
+
+			for (int k = 0; k < samples; k++) {
+				double[] expected = phenotype.calculate(inputs[k]);
+				assertEquals(expected, outputs[k], genome);
+				for (int i = 0; i < outputCount; i++) {
+					if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(flatOutputs[k * outputCount + i]))
+						throw new AssertionError("Flat batch output " + flatOutputs[k * outputCount + i] + " was not equal to " + expected[i] + " for " + genome);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as batchEquivalence() for networks with float weights, which are calculated in single precision.
+	 */
+	public static void singlePrecisionBatchEquivalence() {
+		Random random = new Random(4);
+		for (Genome genome : genomes(4, true)) {
+			Phenotype phenotype = new Phenotype(genome, FUNCTION);
+			if (!phenotype.isSinglePrecision())
+				throw new AssertionError("Phenotype of " + genome + " was not single precision");
+
+			int samples = 1 + random.nextInt(600);
+			int outputCount = phenotype.getOutputCount();
+
+			double[][] inputs = new double[samples][];
+			float[] flat = new float[samples * SyntheticGenomes.INPUTS];
+			for (int k = 0; k < samples; k++) {
+				inputs[k] = input(random);
+				for (int i = 0; i < SyntheticGenomes.INPUTS; i++)
+					flat[k * SyntheticGenomes.INPUTS + i] = (float) inputs[k][i];
+			}
+
+			double[][] outputs = new double[samples][outputCount];
+			float[] flatOutputs = new float[samples * outputCount];
+			phenotype.calculate(inputs, outputs);
+			phenotype.calculate(flat, flatOutputs, samples);
+
+			for (int k = 0; k < samples; k++) {
+				double[] expected = phenotype.calculate(inputs[k]);
+				assertEquals(expected, outputs[k], genome);
+				for (int i = 0; i < outputCount; i++) {
+					if (Float.floatToIntBits((float) expected[i]) != Float.floatToIntBits(flatOutputs[k * outputCount + i]))
+						throw new AssertionError("Flat batch output " + flatOutputs[k * outputCount + i] + " was not equal to " + expected[i] + " for " + genome);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A recurrent network calculates a batch as steps after each other, so every batch must give the same outputs as the steps one by one.
+	 */
+	public static void recurrentBatchEquivalence() {
+		Random random = new Random(5);
+		for (boolean singlePrecision : new boolean[] { false, true }) {
+			EvolutionCore core = core(5, singlePrecision);
+			core.setSetting(Setting.RECURRENT, 1);
+			SyntheticGenomes synthetic = new SyntheticGenomes(core, 5);
+
+			for (int size : SIZES) {
+				Genome genome = synthetic.create(size);
+				// connections between random hidden and output nodes, which form cycles
+				for (int i = 0; i < size / 10; i++) {
+					int[] connection = synthetic.newConnection(genome);
+					genome.addGene(new Gene(core.getNextInnovationNumber(), connection[0], connection[1], random.nextDouble() * 4 - 2, true), null, null);
+				}
+				Phenotype phenotype = new Phenotype(genome, FUNCTION);
+				int outputCount = phenotype.getOutputCount();
+
+				int steps = 50;
+				double[][] inputs = new double[steps][];
+				double[] flat = new double[steps * SyntheticGenomes.INPUTS];
+				float[] floats = new float[flat.length];
+				for (int k = 0; k < steps; k++) {
+					inputs[k] = input(random);
+					for (int i = 0; i < SyntheticGenomes.INPUTS; i++) {
+						// the inputs can be stored as floats exactly, so the float batch gets the same inputs
+						inputs[k][i] = (float) inputs[k][i];
+						flat[k * SyntheticGenomes.INPUTS + i] = inputs[k][i];
+						floats[k * SyntheticGenomes.INPUTS + i] = (float) inputs[k][i];
+					}
+				}
+
+				double[][] expected = new double[steps][];
+				phenotype.reset();
+				for (int k = 0; k < steps; k++) {
+					expected[k] = phenotype.calculate(inputs[k]);
+				}
+
+				double[][] outputs = new double[steps][outputCount];
+				phenotype.reset();
+				phenotype.calculate(inputs, outputs);
+
+				double[] flatOutputs = new double[steps * outputCount];
+				phenotype.reset();
+				phenotype.calculate(flat, flatOutputs, steps);
+
+				float[] floatOutputs = new float[steps * outputCount];
+				phenotype.reset();
+				phenotype.calculate(floats, floatOutputs, steps);
+
+				for (int k = 0; k < steps; k++) {
+					assertEquals(expected[k], outputs[k], genome);
+					for (int i = 0; i < outputCount; i++) {
+						double value = expected[k][i];
+						if (Double.doubleToLongBits(value) != Double.doubleToLongBits(flatOutputs[k * outputCount + i]) || Float.floatToIntBits((float) value) != Float.floatToIntBits(floatOutputs[k * outputCount + i]))
+							throw new AssertionError("Step " + k + " of a batch was not equal to " + value + " for " + genome);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A single phenotype is calculated by multiple threads at once, every thread must get the same outputs as a single thread.
+	 */
+	public static void concurrentCalculation() {
+		Random random = new Random(3);
+		Genome genome = new SyntheticGenomes(core(3, false), 3).create(1000);
+		Phenotype phenotype = new Phenotype(genome, FUNCTION);
+
+		double[][] inputs = new double[1000][];
+		double[][] expected = new double[inputs.length][];
+		for (int k = 0; k < inputs.length; k++) {
+			inputs[k] = input(random);
+			expected[k] = new BackTraceTask(genome, FUNCTION, inputs[k]).calculateOutput();
+		}
+
+		int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		CountDownLatch start = new CountDownLatch(1);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> workers = new ArrayList<>();
+
+		for (int t = 0; t < threads; t++) {
+			int offset = t * 97;
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+					double[][] outputs = new double[inputs.length][phenotype.getOutputCount()];
+					for (int round = 0; round < 20; round++) {
+						for (int i = 0; i < inputs.length; i++) {
+							int k = (i + offset) % inputs.length;
+							assertEquals(expected[k], phenotype.calculate(inputs[k]), genome);
+						}
+						phenotype.calculate(inputs, outputs);
+						for (int k = 0; k < inputs.length; k++) {
+							assertEquals(expected[k], outputs[k], genome);
+						}
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+
+		start.countDown();
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		if (failure.get() != null)
+			throw new AssertionError("Concurrent calculation failed", failure.get());
+	}
+
+	/**
+	 * Returns random genomes of different sizes, half of them with random activation types for their hidden nodes.
+	 */
+	private static List<Genome> genomes(long seed, boolean singlePrecision) {
+		SyntheticGenomes synthetic = new SyntheticGenomes(core(seed, singlePrecision), seed);
+		Random random = new Random(seed);
+
+		List<Genome> genomes = new ArrayList<>();
+		for (int size : SIZES) {
+			for (int i = 0; i < 10; i++) {
+				Genome genome = synthetic.create(size);
+				if (i % 2 == 1) {
+					for (int node : genome.getHiddenNodes()) {
+						if (random.nextInt(3) == 0)
+							genome.setActivation(node, ActivationType.values()[random.nextInt(ActivationType.values().length)]);
+					}
+				}
+				genomes.add(genome);
+			}
+		}
+		return genomes;
+	}
+
+	private static EvolutionCore core(long seed, boolean singlePrecision) {
+		EvolutionCore core = new EvolutionCore(SyntheticGenomes.INPUTS, SyntheticGenomes.OUTPUTS, FUNCTION, null, seed);
+		core.setSetting(Setting.SINGLE_PRECISION, singlePrecision ? 1 : 0);
+		return core;
+	}
+
+	private static double[] input(Random random) {
+		double[] input = new double[SyntheticGenomes.INPUTS];
+		for (int i = 0; i < input.length; i++)
+			input[i] = random.nextDouble() * 4 - 2;
+		return input;
+	}
+
+	private static void assertEquals(double[] expected, double[] actual, Genome genome) {
+		for (int i = 0; i < expected.length; i++) {
+			if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(actual[i]))
+				throw new AssertionError("Output " + i + " was " + actual[i] + " instead of " + expected[i] + " for " + genome);
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tests;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+import examples.car.CarFitness;
+import examples.car.CarLocation;
+import examples.car.MythanTraining;
+import examples.xor.XOR;
+import nl.sandergielisse.mythan.CustomizedSigmoidActivation;
+import nl.sandergielisse.mythan.Setting;
+import nl.sandergielisse.mythan.internal.EvolutionCore;
+import nl.sandergielisse.mythan.internal.PopulationManager;
+
+/**
+ * Verifies that evolving in single precision (Setting.SINGLE_PRECISION) is as successful as evolving in double precision,
+ * by evolving the examples with the same seeds in both precisions.
+ * 
+ * The runs of both precisions are compared with a two-sided Mann-Whitney U test, which only assumes the results can be
+ * ordered. The runs are seeded, so the test always gives the same result. The seeds are evolved in parallel.
+ */
+public class PrecisionTest {
+
+	/**
+	 * The tests fail when the chance that both precisions are equally successful is lower than this.
+	 */
+	private static final double SIGNIFICANCE = 0.01;
+
+	private static final int XOR_SEEDS = 8;
+	private static final int XOR_POPULATION = 1000;
+	private static final int XOR_MAX_GENERATIONS = 100;
+
+	private static final int CAR_SEEDS = 8;
+	private static final int CAR_POPULATION = 50;
+	private static final int CAR_GENERATIONS = 8;
+
+	/**
+	 * Compares the amount of generations needed to solve XOR, a run which didn't solve it counts as the maximum amount of generations.
+	 */
+	public static void xorEquivalence() {
+		XOR xor = new XOR();
+		IntFunction<EvolutionCore> core = seed -> {
+			EvolutionCore c = new EvolutionCore(xor.getInputSize(), xor.getOutputSize(), new CustomizedSigmoidActivation(), xor.getFitnessCalculator(), seed);
+			XOR.configure(c);
+			return c;
+		};
+
+		double[] doubles = evolve(XOR_SEEDS, seed -> generations(core.apply(seed), false, XOR_POPULATION, XOR_MAX_GENERATIONS, XOR.TARGET_FITNESS));
+		double[] floats = evolve(XOR_SEEDS, seed -> generations(core.apply(seed), true, XOR_POPULATION, XOR_MAX_GENERATIONS, XOR.TARGET_FITNESS));
+
+		assertProgress("XOR", doubles, floats, generations -> generations < XOR_MAX_GENERATIONS);
+		assertEquivalent("XOR generations", doubles, floats);
+	}
+
+	/**
+	 * Compares the highest fitness of the car after a few generations, a car which reached the finish has a fitness above 0.
+	 */
+	public static void carEquivalence() {
+		BufferedImage background = route();
+		int inputs = new CarLocation().getAntennas().size();
+		IntFunction<EvolutionCore> core = seed -> {
+			EvolutionCore c = new EvolutionCore(inputs, 2, new CustomizedSigmoidActivation(), new CarFitness(background), seed);
+			MythanTraining.configure(c);
+			return c;
+		};
+
+		double[] doubles = evolve(CAR_SEEDS, seed -> fitness(core.apply(seed), false, CAR_POPULATION, CAR_GENERATIONS));
+		double[] floats = evolve(CAR_SEEDS, seed -> fitness(core.apply(seed), true, CAR_POPULATION, CAR_GENERATIONS));
+
+		assertProgress("The car", doubles, floats, fitness -> fitness > 0);
+		assertEquivalent("Car fitness", doubles, floats);
+	}
+
+	private static double[] evolve(int seeds, IntFunction<Double> run) {
+		return IntStream.range(0, seeds).parallel().mapToDouble(seed -> run.apply(seed)).toArray();
+	}
+
+	private static double generations(EvolutionCore core, boolean singlePrecision, int population, int maxGenerations, double target) {
+		PopulationManager manager = start(core, singlePrecision, population);
+		while (manager.getGeneration() < maxGenerations) {
+			manager.newGeneration();
+			if (manager.getLatestFitness().getFitness() >= target)
+				break;
+		}
+		return manager.getGeneration();
+	}
+
+	private static double fitness(EvolutionCore core, boolean singlePrecision, int population, int generations) {
+		PopulationManager manager = start(core, singlePrecision, population);
+		while (manager.getGeneration() < generations) {
+			manager.newGeneration();
+		}
+		return manager.getLatestFitness().getFitness();
+	}
+
+	private static PopulationManager start(EvolutionCore core, boolean singlePrecision, int population) {
+		core.setSetting(Setting.SINGLE_PRECISION, singlePrecision ? 1 : 0);
+		PopulationManager manager = core.getPopulationManager();
+		manager.initialize(population);
+		return manager;
+	}
+
+	private static BufferedImage route() {
+		URL route = CarLocation.class.getResource("route.png");
+		if (route == null)
+			throw new IllegalStateException("route.png of the car example is not on the class path");
+
+		try {
+			return ImageIO.read(route);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Both precisions must succeed in at least half of the runs, otherwise they are only equivalent in failing.
+	 */
+	private static void assertProgress(String name, double[] doubles, double[] floats, DoublePredicate success) {
+		long doubleSuccesses = Arrays.stream(doubles).filter(success).count();
+		long floatSuccesses = Arrays.stream(floats).filter(success).count();
+		if (doubleSuccesses * 2 < doubles.length || floatSuccesses * 2 < floats.length)
+			throw new AssertionError(name + " only succeeded in " + doubleSuccesses + " of " + doubles.length + " runs in double precision and " + floatSuccesses + " of " + floats.length + " runs in single precision");
+	}
+
+	private static void assertEquivalent(String name, double[] doubles, double[] floats) {
+		double p = mannWhitney(doubles, floats);
+		if (p < SIGNIFICANCE)
+			throw new AssertionError(name + " differ between double precision " + Arrays.toString(doubles) + " and single precision " + Arrays.toString(floats) + " (p = " + p + ")");
+	}
+
+	/**
+	 * Returns the two-sided p-value of the Mann-Whitney U test, using the normal approximation with a correction for ties.
+	 */
+	static double mannWhitney(double[] a, double[] b) {
+		int n = a.length + b.length;
+		double[] all = new double[n];
+		System.arraycopy(a, 0, all, 0, a.length);
+		System.arraycopy(b, 0, all, a.length, b.length);
+		double[] sorted = all.clone();
+		Arrays.sort(sorted);
+
+		// the rank of tied values is the average of their positions, ties reduce the variance
+		double rankSum = 0;
+		double ties = 0;
+		for (int i = 0; i < a.length; i++) {
+			rankSum += rank(sorted, a[i]);
+		}
+		for (int i = 0; i < n;) {
+			int j = i;
+			while (j < n && sorted[j] == sorted[i])
+				j++;
+			double t = j - i;
+			ties += t * t * t - t;
+			i = j;
+		}
+
+		double u = rankSum - a.length * (a.length + 1) / 2.0;
+		double mean = a.length * b.length / 2.0;
+		double variance = a.length * b.length / 12.0 * ((n + 1) - ties / ((double) n * (n - 1)));
+		if (variance == 0)
+			return 1;
+
+		double z = (Math.abs(u - mean) - 0.5) / Math.sqrt(variance);
+		return Math.min(1, 2 * (1 - normal(Math.max(0, z))));
+	}
+
+	private static double rank(double[] sorted, double value) {
+		int first = 0;
+		while (sorted[first] != value)
+			first++;
+		int last = first;
+		while (last + 1 < sorted.length && sorted[last + 1] == value)
+			last++;
+		return (first + last) / 2.0 + 1;
+	}
+
+	/**
+	 * The cumulative distribution function of the standard normal distribution (Abramowitz and Stegun 26.2.17, error below 7.5e-8).
+	 */
+	private static double normal(double z) {
+		double t = 1 / (1 + 0.2316419 * z);
+		double density = Math.exp(-z * z / 2) / Math.sqrt(2 * Math.PI);
+		return 1 - density * t * (0.319381530 + t * (-0.356563782 + t * (1.781477937 + t * (-1.821255978 + t * 1.330274429))));
+	}
+}
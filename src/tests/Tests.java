@@ -0,0 +1,75 @@
+/**
+ * Copyright 2016 Alexander Gielisse
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tests;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the tests of the library, a test fails by throwing an exception.
+ * 
+ * Usage: Tests [filter...]
+ * 
+ * Only tests whose name contains one of the filters are run. The process exits with status 1 when a test fails.
+ */
+public class Tests {
+
+	public static void main(String[] args) {
+		Map<String, Runnable> tests = new LinkedHashMap<>();
+		tests.put("PhenotypeTest.backTraceEquivalence", PhenotypeTest::backTraceEquivalence);
+		tests.put("PhenotypeTest.batchEquivalence", PhenotypeTest::batchEquivalence);
+		tests.put("PhenotypeTest.singlePrecisionBatchEquivalence", PhenotypeTest::singlePrecisionBatchEquivalence);
+		tests.put("PhenotypeTest.recurrentBatchEquivalence", PhenotypeTest::recurrentBatchEquivalence);
+		tests.put("PhenotypeTest.concurrentCalculation", PhenotypeTest::concurrentCalculation);
+		tests.put("IslandTest.seededRunsAreEqual", IslandTest::seededRunsAreEqual);
+		tests.put("PrecisionTest.xorEquivalence", PrecisionTest::xorEquivalence);
+		tests.put("PrecisionTest.carEquivalence", PrecisionTest::carEquivalence);
+
+		List<String> failed = new ArrayList<>();
+		for (Map.Entry<String, Runnable> test : tests.entrySet()) {
+			if (!selected(test.getKey(), args))
+				continue;
+
+			long start = System.nanoTime();
+			try {
+				test.getValue().run();
+				System.out.println("PASS " + test.getKey() + " (" + (System.nanoTime() - start) / 1000000 + " ms)");
+			} catch (Throwable t) {
+				System.out.println("FAIL " + test.getKey());
+				t.printStackTrace(System.out);
+				failed.add(test.getKey());
+			}
+		}
+
+		if (!failed.isEmpty()) {
+			System.out.println(failed.size() + " test(s) failed: " + failed);
+			System.exit(1);
+		}
+	}
+
+	private static boolean selected(String name, String[] filters) {
+		if (filters.length == 0)
+			return true;
+
+		for (String filter : filters) {
+			if (name.contains(filter))
+				return true;
+		}
+		return false;
+	}
+}